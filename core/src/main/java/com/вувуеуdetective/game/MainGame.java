@@ -4,36 +4,94 @@ import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ScreenUtils;
+import com.вувуеуdetective.game.ai.CaseGenerator;
+import com.вувуеуdetective.game.ai.GossipSimulator;
+import com.вувуеуdetective.game.ai.GreetingPrefetcher;
+import com.вувуеуdetective.game.ai.MysteryCase;
+import com.вувуеуdetective.game.ai.NpcKnowledge;
+import com.вувуеуdetective.game.ai.NpcMemory;
 import com.вувуеуdetective.game.ai.OllamaClient;
+import com.вувуеуdetective.game.ai.ResponseCache;
+import com.вувуеуdetective.game.ai.TokenBudget;
 import com.вувуеуdetective.game.entities.NPC;
+import com.вувуеуdetective.game.entities.NpcLodScheduler;
+import com.вувуеуdetective.game.entities.NpcStore;
 import com.вувуеуdetective.game.ui.DialogueSystem;
+import com.вувуеуdetective.game.world.MapRegionFile;
 import com.вувуеуdetective.game.world.SimpleMap;
+import com.вувуеуdetective.game.world.StaticMapLayer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /** Medieval Detective Game - Main class */
 public class MainGame extends ApplicationAdapter {
     private ShapeRenderer shapeRenderer;
     private SimpleMap map;
+    private SpriteBatch batch;
+    private StaticMapLayer mapLayer; // Tiles pre-rendered per chunk, only visible chunks drawn
+    private OrthographicCamera camera; // Follows the player
+    private final Matrix4 uiProjection = new Matrix4(); // Screen pixels, for the dialogue box
     
     // Simple player (red circle)
     private float playerX = 100;
     private float playerY = 100;
     private float playerSpeed = 150f; // pixels per second
     
-    // NPCs list
+    // All villagers live in the store; npcs are views of the ones you can talk to
+    private NpcStore npcStore;
     private Array<NPC> npcs;
+    private NpcLodScheduler npcScheduler; // Ticks NPCs near the camera often, far ones not at all
+    private final Rectangle visibleArea = new Rectangle(); // World rectangle the camera shows
     
     // AI and dialogue systems
     private OllamaClient ollamaClient;
+    private GreetingPrefetcher greetingPrefetcher;
     private DialogueSystem dialogueSystem;
+    private CaseGenerator caseGenerator;
+    private MysteryCase currentCase = null; // Null until the first case is generated
+    private NpcKnowledge npcKnowledge;
+    private GossipSimulator gossipSimulator;
+    private NpcMemory npcMemory;
+    
+    // Player can talk to NPCs within this distance (pixels)
+    private static final float INTERACTION_DISTANCE = 50f;
+    // G calls the villagers within this distance (pixels)
+    private static final float GATHER_DISTANCE = 10 * SimpleMap.TILE_SIZE;
+    private final IntArray gatherHits = new IntArray();
+    // Show a stand-in line if the greeting's first word takes longer than this
+    private static final long GREETING_FIRST_TOKEN_BUDGET_MS = 1500;
+    // Model tokens per second NPC gossip may use (tune for the machine running Ollama)
+    private static final double GOSSIP_TOKENS_PER_SECOND = 20;
+    private static final double GOSSIP_BURST_SECONDS = 30;
+    // Colors of the anonymous crowd (VILLAGE_CROWD)
+    private static final Color[] CROWD_COLORS = {Color.BROWN, Color.ORANGE, Color.GRAY};
 
     @Override
     public void create() {
         shapeRenderer = new ShapeRenderer();
-        map = new SimpleMap();
+        map = createMap();
+        batch = new SpriteBatch();
+        mapLayer = new StaticMapLayer(map);
+        camera = new OrthographicCamera();
+        camera.setToOrtho(false, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+        uiProjection.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
         
         // Set window title
         Gdx.graphics.setTitle("Medieval Detective - Alpha");
@@ -43,14 +101,80 @@ public class MainGame extends ApplicationAdapter {
         playerY = 7 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2;
         
         // Initialize AI and dialogue systems
-        ollamaClient = new OllamaClient();
+        ollamaClient = new OllamaClient(new ResponseCache(256, 10 * 60 * 1000, 1,
+            Gdx.files.local("cache/responses").file().toPath()));
         dialogueSystem = new DialogueSystem();
         
+        // NPCs remember what the detective asked them and recall it when it becomes relevant again
+        npcMemory = new NpcMemory(ollamaClient, Gdx.files.local("cache/memory").file().toPath());
+        ollamaClient.setMemory(npcMemory);
+        greetingPrefetcher = new GreetingPrefetcher(ollamaClient, this::getNPCRole);
+        
+        // Load the model in the background while the player looks around
+        ollamaClient.warmUp().thenAccept(millis -> {
+            if (millis >= 0) System.out.println("AI model ready (warm-up took " + millis + " ms)");
+        });
+        
         // Create NPCs
         createNPCs();
         
+        // Generate mysteries for this cast in the background, one ahead
+        Map<String, String> cast = new LinkedHashMap<>();
+        for (NPC npc : npcs) {
+            cast.put(npc.getName(), getNPCRole(npc.getName()));
+        }
+        caseGenerator = new CaseGenerator(ollamaClient, cast, Gdx.files.local("cache/cases").file().toPath());
+        caseGenerator.setProgressListener((stage, stages, description) ->
+            System.out.println("Case generation " + stage + "/" + stages + ": " + description));
+        
+        // Villagers talk among themselves when the model has nothing better to do
+        npcKnowledge = new NpcKnowledge();
+        ollamaClient.setKnowledge(npcKnowledge);
+        gossipSimulator = new GossipSimulator(ollamaClient, npcKnowledge,
+            new TokenBudget(GOSSIP_TOKENS_PER_SECOND, GOSSIP_BURST_SECONDS), cast);
+        
+        caseGenerator.start();
+        startNextCase();
+        
         System.out.println("Game initialized! Click on NPCs to talk to them.");
     }
+    
+    /**
+     * The hand-made village, or a generated one of VILLAGE_SIZE tiles
+     * (e.g. VILLAGE_SIZE=1000 or 1000x600) around it. A generated village is
+     * saved as a region file the first time and mapped in from it afterwards.
+     */
+    private SimpleMap createMap() {
+        String size = System.getenv("VILLAGE_SIZE");
+        if (size == null || size.isBlank()) {
+            return new SimpleMap();
+        }
+        try {
+            String[] parts = size.trim().toLowerCase().split("x");
+            int width = Integer.parseInt(parts[0].trim());
+            int height = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : width;
+            Path file = Gdx.files.local("cache/village-" + width + "x" + height + ".map").file().toPath();
+            if (!Files.exists(file)) {
+                SimpleMap generated = SimpleMap.generateVillage(width, height, 1);
+                Files.createDirectories(file.getParent());
+                MapRegionFile.write(generated, file);
+                System.out.println("Generated a " + generated.getWidth() + "x" + generated.getHeight() + " tile village");
+            }
+            return SimpleMap.open(file);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring VILLAGE_SIZE=" + size + ": " + e.getMessage());
+            return new SimpleMap();
+        } catch (IOException e) {
+            System.err.println("Could not load the village for VILLAGE_SIZE=" + size + ": " + e.getMessage());
+            return new SimpleMap();
+        }
+    }
+
+    @Override
+    public void resize(int width, int height) {
+        camera.setToOrtho(false, width, height);
+        uiProjection.setToOrtho2D(0, 0, width, height);
+    }
 
     @Override
     public void render() {
@@ -59,17 +183,34 @@ public class MainGame extends ApplicationAdapter {
         // Handle input (player movement)
         handleInput(deltaTime);
         
-        // Update NPCs
-        updateNPCs(deltaTime);
+        // Follow the player and find the chunks in view
+        updateCamera();
+        map.pageAround(playerX, playerY);
+        
+        // Re-render chunk textures that came into view or changed (must happen outside begin/end)
+        mapLayer.update(camera);
+        
+        // Update NPCs - every frame near the camera, less often further out, asleep far away
+        npcScheduler.update(deltaTime, visibleArea);
+        
+        // Start greetings for NPCs the player is walking towards
+        if (!dialogueSystem.isActive()) {
+            greetingPrefetcher.update(playerX, playerY, npcs);
+            gossipSimulator.update(deltaTime);
+        }
         
         // Clear screen with dark background (medieval atmosphere)
         ScreenUtils.clear(0.1f, 0.1f, 0.15f, 1f);
         
-        // Start rendering shapes
-        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        // Draw the map - one textured quad per visible chunk
+        batch.setProjectionMatrix(camera.combined);
+        batch.begin();
+        mapLayer.draw(batch);
+        batch.end();
         
-        // Draw the map
-        map.render(shapeRenderer);
+        // Start rendering shapes in the world
+        shapeRenderer.setProjectionMatrix(camera.combined);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
         
         // Draw NPCs
         renderNPCs();
@@ -77,12 +218,28 @@ public class MainGame extends ApplicationAdapter {
         // Draw player (red circle) - draw last so it's on top
         shapeRenderer.setColor(Color.RED);
         shapeRenderer.circle(playerX, playerY, 12f);
-        
-        // Draw dialogue box (if active)
-        dialogueSystem.render(shapeRenderer);
-        
-        // End rendering
         shapeRenderer.end();
+        
+        // Draw dialogue box (if active) - fixed on screen, not in the world
+        if (dialogueSystem.isActive()) {
+            shapeRenderer.setProjectionMatrix(uiProjection);
+            shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+            dialogueSystem.render(shapeRenderer);
+            shapeRenderer.end();
+        }
+    }
+    
+    /**
+     * Center the camera on the player, without showing anything beyond the map's edges
+     * (a map smaller than the window stays in the bottom left corner)
+     */
+    private void updateCamera() {
+        float halfWidth = camera.viewportWidth * camera.zoom / 2;
+        float halfHeight = camera.viewportHeight * camera.zoom / 2;
+        camera.position.x = Math.max(halfWidth, Math.min(playerX, map.getMapWidthInPixels() - halfWidth));
+        camera.position.y = Math.max(halfHeight, Math.min(playerY, map.getMapHeightInPixels() - halfHeight));
+        camera.update();
+        visibleArea.set(camera.position.x - halfWidth, camera.position.y - halfHeight, halfWidth * 2, halfHeight * 2);
     }
     
     private void handleInput(float deltaTime) {
@@ -94,11 +251,20 @@ public class MainGame extends ApplicationAdapter {
         // Handle dialogue closing with ESC key
         if (Gdx.input.isKeyJustPressed(Input.Keys.ESCAPE)) {
             if (dialogueSystem.isActive()) {
-                dialogueSystem.closeDialogue();
-                System.out.println("Dialogue closed.");
+                closeDialogue();
             }
         }
         
+        // Handle N key for the next case
+        if (Gdx.input.isKeyJustPressed(Input.Keys.N) && !dialogueSystem.isActive()) {
+            startNextCase();
+        }
+        
+        // Handle G key - call the villagers around to the detective
+        if (Gdx.input.isKeyJustPressed(Input.Keys.G) && !dialogueSystem.isActive()) {
+            gatherVillagers();
+        }
+        
         // Don't move player if dialogue is active
         if (dialogueSystem.isActive()) {
             return; // Skip movement when talking
@@ -138,51 +304,72 @@ public class MainGame extends ApplicationAdapter {
     private void handleInteraction() {
         // If dialogue is active, close it
         if (dialogueSystem.isActive()) {
-            dialogueSystem.closeDialogue();
-            System.out.println("Dialogue closed.");
+            closeDialogue();
             return;
         }
         
-        // Check if player is near any NPC
-        for (NPC npc : npcs) {
-            if (isPlayerNearNPC(npc)) {
-                startDialogueWithNPC(npc);
-                return; // Found nearby NPC, stop checking
-            }
+        // Talk to the closest NPC in reach (a grid lookup, not a scan of the whole crowd)
+        int nearest = npcStore.nearestInteractable(playerX, playerY, INTERACTION_DISTANCE);
+        if (nearest >= 0) {
+            startDialogueWithNPC(npcStore.view(nearest));
+            return;
         }
         
         // No NPC nearby
         System.out.println("No one nearby to talk to. Get closer to an NPC and press E.");
     }
     
-    /**
-     * Check if player is close enough to interact with NPC
-     */
-    private boolean isPlayerNearNPC(NPC npc) {
-        // Calculate distance from player to NPC
-        float dx = playerX - npc.getX();
-        float dy = playerY - npc.getY();
-        float distance = (float) Math.sqrt(dx * dx + dy * dy);
-        
-        // Can interact if within interaction distance
-        float interactionDistance = 50f; // 50 pixels
-        return distance <= interactionDistance;
-    }
-    
     /**
      * Start AI dialogue with clicked NPC
      */
     private void startDialogueWithNPC(NPC npc) {
         System.out.println("Starting dialogue with " + npc.getName());
         
+        // The model belongs to the detective now - gossip waits until the box closes
+        gossipSimulator.setEnabled(false);
+        
         // Get NPC role based on name for AI context
         String npcRole = getNPCRole(npc.getName());
         
-        // Generate greeting from AI
-        String aiResponse = ollamaClient.getNPCGreeting(npc.getName(), npcRole);
+        // Greeting generated while the player approached - show it instantly
+        CompletableFuture<String> prefetched = greetingPrefetcher.take(npc);
+        if (prefetched != null && prefetched.isDone()) {
+            try {
+                dialogueSystem.showDialogue(npc.getName(), prefetched.getNow(null));
+                return;
+            } catch (CancellationException | CompletionException e) {
+                // Dropped or failed since take() - ask normally
+            }
+        }
+        
+        // Open the box in "thinking" state - the frame loop keeps running while the AI works
+        int replyId = dialogueSystem.showThinking(npc.getName());
         
-        // Show dialogue
-        dialogueSystem.showDialogue(npc.getName(), aiResponse);
+        // Stream the greeting token by token so the player sees the first words quickly.
+        // If the model is slow to start, a stand-in line fills the box until it does.
+        CompletableFuture<String> greeting = ollamaClient.getNPCGreetingStreaming(npc.getName(), npcRole,
+            OllamaClient.onGameThread(token -> dialogueSystem.appendText(replyId, token)),
+            GREETING_FIRST_TOKEN_BUDGET_MS,
+            OllamaClient.onGameThread(standIn -> dialogueSystem.showStandIn(replyId, standIn)));
+        dialogueSystem.setPendingRequest(replyId, greeting);
+        
+        // Final (trimmed) text replaces the streamed one once the stream is done
+        OllamaClient.deliverOnGameThread(greeting,
+            aiResponse -> dialogueSystem.showResponse(replyId, npc.getName(), aiResponse));
+        
+        // Our request joins the still-running prefetch; release its handle once we have the answer
+        if (prefetched != null) {
+            greeting.whenComplete((text, error) -> prefetched.cancel(true));
+        }
+    }
+    
+    /**
+     * Close the dialogue box and let the villagers gossip again
+     */
+    private void closeDialogue() {
+        dialogueSystem.closeDialogue();
+        gossipSimulator.setEnabled(true);
+        System.out.println("Dialogue closed.");
     }
     
     /**
@@ -197,68 +384,145 @@ public class MainGame extends ApplicationAdapter {
         }
     }
 
+    /**
+     * Ask for the next mystery - instant if one was generated ahead
+     */
+    private void startNextCase() {
+        System.out.println("Preparing the next case... (" + caseGenerator.getStatus() + ")");
+        OllamaClient.deliverOnGameThread(caseGenerator.nextCase(), this::beginCase);
+    }
+    
+    /**
+     * Make a case the current one: villagers now know (and hide) their part in it
+     */
+    private void beginCase(MysteryCase mysteryCase) {
+        currentCase = mysteryCase;
+        ollamaClient.setCaseNotes(mysteryCase::describeFor);
+        npcKnowledge.clear(); // Gossip about the last case is old news
+        npcMemory.setCase(mysteryCase.id); // So are answers about it
+        greetingPrefetcher.clear(); // Prefetched greetings don't know about the case
+        System.out.println("New case: " + mysteryCase);
+    }
+
     /**
      * Create NPCs and place them on the map
      */
     private void createNPCs() {
+        npcStore = new NpcStore(map);
+        npcScheduler = new NpcLodScheduler(npcStore);
         npcs = new Array<>();
         
         // Create villagers in different locations
         // Each NPC: position, name, color
         
         // Blacksmith (blue) - in walkable area near left buildings
-        NPC blacksmith = new NPC(
+        NPC blacksmith = npcStore.view(npcStore.add(
             6 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2,  // X position (tile 6)
             6 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2,  // Y position (tile 6)
             "Blacksmith",
-            Color.BLUE,
-            map
-        );
+            Color.BLUE
+        ));
         npcs.add(blacksmith);
         
         // Innkeeper (green) - in center walkable area
-        NPC innkeeper = new NPC(
+        NPC innkeeper = npcStore.view(npcStore.add(
             12 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2, // X position (tile 12)
             6 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2,  // Y position (tile 6) 
             "Innkeeper", 
-            Color.GREEN,
-            map
-        );
+            Color.GREEN
+        ));
         npcs.add(innkeeper);
         
         // Merchant (yellow) - in right walkable area
-        NPC merchant = new NPC(
+        NPC merchant = npcStore.view(npcStore.add(
             17 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2, // X position (tile 17)
             8 * SimpleMap.TILE_SIZE + SimpleMap.TILE_SIZE/2,  // Y position (tile 8)
             "Merchant",
-            Color.YELLOW,
-            map
-        );
+            Color.YELLOW
+        ));
         npcs.add(merchant);
         
-        System.out.println("Created " + npcs.size + " NPCs");
+        // Optional crowd of anonymous villagers (e.g. VILLAGE_CROWD=50000) - they wander but don't talk
+        String crowd = System.getenv("VILLAGE_CROWD");
+        if (crowd != null && !crowd.isBlank()) {
+            try {
+                spawnCrowd(Integer.parseInt(crowd.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring VILLAGE_CROWD=" + crowd + ": " + e.getMessage());
+            }
+        }
+        
+        System.out.println("Created " + npcStore.size() + " NPCs");
     }
     
     /**
-     * Update all NPCs - handle their AI and movement
+     * Scatter villagers over random walkable tiles
      */
-    private void updateNPCs(float deltaTime) {
-        for (NPC npc : npcs) {
-            npc.update(deltaTime);
+    private void spawnCrowd(int count) {
+        int placed = 0;
+        for (int attempt = 0; placed < count && attempt < count * 10; attempt++) {
+            int tileX = MathUtils.random(0, map.getWidth() - 1);
+            int tileY = MathUtils.random(0, map.getHeight() - 1);
+            if (!map.isWalkable(tileX, tileY)) continue;
+            npcStore.add(map.tileToWorldX(tileX) + SimpleMap.TILE_SIZE / 2f, map.tileToWorldY(tileY) + SimpleMap.TILE_SIZE / 2f,
+                null, CROWD_COLORS[placed % CROWD_COLORS.length]);
+            placed++;
         }
     }
     
     /**
-     * Render all NPCs
+     * Send every villager within GATHER_DISTANCE walking to the player's tile
+     * (they all share one flow field to get there)
      */
-    private void renderNPCs() {
-        for (NPC npc : npcs) {
-            npc.render(shapeRenderer);
+    private void gatherVillagers() {
+        gatherHits.clear();
+        npcStore.getGrid().queryRadius(playerX, playerY, GATHER_DISTANCE, gatherHits);
+        int tileX = map.worldToTileX(playerX);
+        int tileY = map.worldToTileY(playerY);
+        for (int k = 0; k < gatherHits.size; k++) {
+            npcStore.setGoal(gatherHits.items[k], tileX, tileY);
         }
+        System.out.println("Called " + gatherHits.size + " villagers to tile (" + tileX + ", " + tileY + ")");
+    }
+    
+    /**
+     * Render the NPCs in the camera's view
+     */
+    private void renderNPCs() {
+        npcStore.render(shapeRenderer, visibleArea.x, visibleArea.y,
+            visibleArea.x + visibleArea.width, visibleArea.y + visibleArea.height);
+    }
+
+    @Override
+    public void resume() {
+        mapLayer.invalidate(); // Frame buffer contents don't survive a lost GL context
     }
 
     @Override
     public void dispose() {
+        System.out.println("AI " + ollamaClient.getCache().getDebugInfo());
+        System.out.println("AI " + ollamaClient.getSingleFlight().getDebugInfo());
+        System.out.println("AI " + greetingPrefetcher.getDebugInfo());
+        System.out.println("AI " + ollamaClient.getScheduler().getDebugInfo());
+        System.out.println("AI " + ollamaClient.getLatencyDebugInfo());
+        System.out.println("AI " + ollamaClient.getRouter().getDebugInfo());
+        System.out.println("AI " + ollamaClient.getGenerationPolicy().getDebugInfo());
+        System.out.println("AI " + caseGenerator.getDebugInfo());
+        System.out.println("AI " + gossipSimulator.getDebugInfo());
+        System.out.println("AI " + npcKnowledge.getDebugInfo());
+        System.out.println("AI " + npcMemory.getDebugInfo());
+        npcMemory.close();
+        caseGenerator.stop();
+        greetingPrefetcher.clear();
+        System.out.println(mapLayer.getDebugInfo());
+        System.out.println(map.getDebugInfo());
+        System.out.println(npcStore.getDebugInfo());
+        System.out.println(npcScheduler.getDebugInfo());
+        System.out.println(npcStore.getGrid().getDebugInfo());
+        System.out.println(npcStore.getNavigation().getDebugInfo());
+        mapLayer.dispose();
+        map.close();
+        batch.dispose();
         shapeRenderer.dispose();
     }
 }
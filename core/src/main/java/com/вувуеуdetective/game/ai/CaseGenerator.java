@@ -0,0 +1,529 @@
+package com.вувуеуdetective.game.ai;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.вувуеуdetective.game.ai.MysteryCase.Clue;
+import com.вувуеуdetective.game.ai.MysteryCase.Suspect;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Generates whole mysteries in the background, one staged pipeline per case:
+ * outline (crime, victim, culprit), suspects (motives, alibis, secrets), clues.
+ * Each stage is a BACKGROUND request in Ollama's JSON format mode, parsed into
+ * MysteryCase and checked before the next stage builds on it. A stage holds
+ * the background slot for tens of seconds, so like gossip it only starts once
+ * the scheduler is idle - greeting prefetch and memory embeddings go first.
+ *
+ * Finished cases are written to disk and kept ready: one case is always
+ * generated ahead, so the next case starts without waiting. Cases left on disk
+ * from earlier sessions are used first.
+ */
+public class CaseGenerator {
+
+    /**
+     * Called on a worker thread - wrap with Gdx.app.postRunnable to touch game state
+     */
+    public interface ProgressListener {
+        void onProgress(int stage, int stages, String description);
+    }
+
+    private static final int STAGES = 4; // Outline, suspects, clues, saving
+    private static final int READY_TARGET = 1; // Cases kept generated ahead
+    private static final int MAX_ATTEMPTS = 3; // Per stage (bad JSON, dropped request...)
+    private static final long MIN_RETRY_DELAY_MS = 5000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+    private static final long IDLE_CHECK_INTERVAL_MS = 500; // How often a stage looks for a quiet scheduler
+
+    private final OllamaClient ollamaClient;
+    private final Map<String, String> cast; // NPC name -> role
+    private final Path cacheDir; // null = memory only
+    private final ExecutorService worker; // Disk IO and pipeline bookkeeping, never the game thread
+
+    // Guarded by "this"
+    private final Deque<MysteryCase> ready = new ArrayDeque<>();
+    private final Deque<CompletableFuture<MysteryCase>> waiting = new ArrayDeque<>();
+    private CompletableFuture<MysteryCase> generating = null;
+    private CompletableFuture<?> currentRequest = null; // The stage request (or idle wait), cancelled by stop()
+    private int failuresInRow = 0;
+    private boolean stopped = false;
+
+    private volatile ProgressListener listener = null;
+    private volatile String status = "idle";
+
+    // Statistics
+    private int generated = 0;
+    private int loadedFromDisk = 0;
+    private int failed = 0;
+    private volatile long lastGenerationMillis = 0;
+
+    public CaseGenerator(OllamaClient ollamaClient, Map<String, String> cast, Path cacheDir) {
+        this.ollamaClient = ollamaClient;
+        this.cast = new LinkedHashMap<>(cast);
+        this.cacheDir = cacheDir;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "case-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Load cases left on disk, then start generating ahead
+     */
+    public void start() {
+        worker.execute(() -> {
+            List<MysteryCase> cached = loadCachedCases();
+            for (MysteryCase mysteryCase : cached) {
+                offer(mysteryCase);
+            }
+            synchronized (this) {
+                loadedFromDisk += cached.size();
+            }
+            if (!cached.isEmpty()) {
+                System.out.println("Loaded " + cached.size() + " pre-generated case(s) from disk");
+            }
+            topUp();
+        });
+    }
+
+    /**
+     * The next case to play. Completes immediately if one was generated ahead,
+     * otherwise when the running generation finishes. Generation of the one
+     * after it starts right away.
+     */
+    public CompletableFuture<MysteryCase> nextCase() {
+        CompletableFuture<MysteryCase> next = new CompletableFuture<>();
+        MysteryCase mysteryCase;
+        synchronized (this) {
+            mysteryCase = ready.poll();
+            if (mysteryCase == null) {
+                waiting.add(next);
+            }
+        }
+        if (mysteryCase != null) {
+            MysteryCase taken = mysteryCase;
+            worker.execute(() -> deleteCached(taken)); // Being played - don't offer it again next session
+            next.complete(mysteryCase);
+        }
+        worker.execute(this::topUp);
+        return next;
+    }
+
+    /**
+     * Stop generating (game shutdown). Cases already on disk stay for next time.
+     */
+    public void stop() {
+        CompletableFuture<MysteryCase> running;
+        CompletableFuture<?> request;
+        synchronized (this) {
+            stopped = true;
+            running = generating;
+            request = currentRequest;
+        }
+        // The pipeline isn't linked to run - cancel the model request itself too
+        if (request != null) request.cancel(true);
+        if (running != null) running.cancel(true);
+        worker.shutdownNow();
+    }
+
+    /**
+     * Hand a finished case to whoever waits for one, or keep it ready
+     */
+    private void offer(MysteryCase mysteryCase) {
+        CompletableFuture<MysteryCase> taker;
+        synchronized (this) {
+            taker = waiting.poll();
+            if (taker == null) ready.add(mysteryCase);
+        }
+        if (taker != null) {
+            deleteCached(mysteryCase);
+            taker.complete(mysteryCase);
+        }
+    }
+
+    /**
+     * Start a generation if we are below the ready target or someone waits
+     */
+    private void topUp() {
+        CompletableFuture<MysteryCase> run = new CompletableFuture<>();
+        synchronized (this) {
+            if (stopped || generating != null) return;
+            if (ready.size() >= READY_TARGET && waiting.isEmpty()) return;
+            generating = run;
+        }
+        long start = System.currentTimeMillis();
+        generate().whenComplete((mysteryCase, error) -> {
+            if (error != null) run.completeExceptionally(error); else run.complete(mysteryCase);
+        });
+        run.whenCompleteAsync((mysteryCase, error) -> {
+            if (error == null) {
+                lastGenerationMillis = System.currentTimeMillis() - start;
+                saveCase(mysteryCase);
+            }
+            finished(mysteryCase, error);
+        }, worker);
+    }
+
+    private void finished(MysteryCase mysteryCase, Throwable error) {
+        long retryDelay = 0;
+        synchronized (this) {
+            generating = null;
+            if (error != null) {
+                failed++;
+                failuresInRow++;
+                retryDelay = Math.min(MAX_RETRY_DELAY_MS, MIN_RETRY_DELAY_MS << Math.min(4, failuresInRow - 1));
+            } else {
+                generated++;
+                failuresInRow = 0;
+            }
+        }
+
+        if (error != null) {
+            status = "failed, retrying in " + retryDelay / 1000 + " s";
+            System.err.println("Case generation failed: " + describe(error));
+            CompletableFuture.delayedExecutor(retryDelay, TimeUnit.MILLISECONDS, worker).execute(this::topUp);
+        } else {
+            status = "idle";
+            offer(mysteryCase);
+            System.out.println("Generated case \"" + mysteryCase.title + "\" in " + lastGenerationMillis + " ms");
+            topUp();
+        }
+    }
+
+    /**
+     * The staged pipeline for one case
+     */
+    private CompletableFuture<MysteryCase> generate() {
+        MysteryCase mysteryCase = new MysteryCase();
+        mysteryCase.createdAt = System.currentTimeMillis();
+        mysteryCase.id = "case-" + mysteryCase.createdAt;
+
+        progress(1, "outlining the crime");
+        return stage(() -> outlinePrompt(), MysteryCase.class, outline -> checkOutline(outline, mysteryCase))
+            .thenCompose(ignored -> {
+                progress(2, "writing suspects");
+                return stage(() -> suspectsPrompt(mysteryCase), SuspectList.class,
+                    list -> checkSuspects(list, mysteryCase));
+            })
+            .thenCompose(ignored -> {
+                progress(3, "placing clues");
+                return stage(() -> cluesPrompt(mysteryCase), ClueList.class, list -> checkClues(list, mysteryCase));
+            })
+            .thenApply(ignored -> {
+                progress(4, "saving");
+                return mysteryCase;
+            });
+    }
+
+    /**
+     * One JSON request, parsed and checked; retried on bad answers.
+     * The checker copies what it needs into the case and returns an error
+     * message, or null if the answer was usable.
+     */
+    private <T> CompletableFuture<Void> stage(Supplier<String> prompt, Class<T> type, Function<T, String> checker) {
+        return attempt(prompt, type, checker, 1);
+    }
+
+    private <T> CompletableFuture<Void> attempt(Supplier<String> prompt, Class<T> type, Function<T, String> checker,
+                                                int attempt) {
+        CompletableFuture<String> request = track(whenIdle())
+            .thenCompose(ignored -> track(ollamaClient.generateJson(prompt.get())));
+        return request.handle((text, error) -> {
+            String problem;
+            if (error != null) {
+                problem = describe(error);
+            } else {
+                try {
+                    T parsed = newJson().fromJson(type, text);
+                    problem = parsed == null ? "empty answer" : checker.apply(parsed);
+                } catch (RuntimeException e) {
+                    problem = "unreadable JSON (" + e.getMessage() + ")";
+                }
+            }
+            return problem;
+        }).thenCompose(problem -> {
+            if (problem == null) return CompletableFuture.completedFuture((Void) null);
+            if (attempt >= MAX_ATTEMPTS || isStopped()) {
+                return CompletableFuture.failedFuture(new IllegalStateException(type.getSimpleName() + ": " + problem));
+            }
+            System.err.println("Case stage " + type.getSimpleName() + " attempt " + attempt + " rejected: " + problem);
+            return attempt(prompt, type, checker, attempt + 1);
+        });
+    }
+
+    /**
+     * Completes once nothing else is running or queued in the scheduler
+     */
+    private CompletableFuture<Void> whenIdle() {
+        CompletableFuture<Void> idle = new CompletableFuture<>();
+        checkIdle(idle);
+        return idle;
+    }
+
+    private void checkIdle(CompletableFuture<Void> idle) {
+        if (idle.isDone()) return; // Cancelled by stop()
+        if (ollamaClient.getScheduler().isIdle()) {
+            idle.complete(null);
+            return;
+        }
+        CompletableFuture.delayedExecutor(IDLE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS, worker)
+            .execute(() -> checkIdle(idle));
+    }
+
+    /**
+     * Remember a stage request so stop() can cancel it; cancelled right away if already stopped
+     */
+    private <T> CompletableFuture<T> track(CompletableFuture<T> request) {
+        boolean cancel;
+        synchronized (this) {
+            cancel = stopped;
+            if (!cancel) currentRequest = request;
+        }
+        if (cancel) request.cancel(true);
+        return request;
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    // ---- Prompts ----
+
+    private String castList() {
+        StringBuilder list = new StringBuilder();
+        for (Map.Entry<String, String> member : cast.entrySet()) {
+            if (list.length() > 0) list.append(", ");
+            list.append(member.getKey()).append(" (the ").append(member.getValue()).append(')');
+        }
+        return list.toString();
+    }
+
+    private String outlinePrompt() {
+        return "You write mysteries for a detective game set in a small medieval village. " +
+            "The suspects are: " + castList() + ". " +
+            "Invent a crime (theft, poisoning, murder...) that happened in the village. " +
+            "The victim is someone else, not one of the suspects. Exactly one suspect did it. " +
+            "Answer with JSON only, in this form: " +
+            "{\"title\": \"short title\", \"crime\": \"what happened, 1-2 sentences\", \"victim\": \"name\", " +
+            "\"location\": \"where\", \"time\": \"when\", \"culprit\": \"one suspect name exactly as given\", " +
+            "\"solution\": \"how and why the culprit did it, 2 sentences\"}";
+    }
+
+    private String suspectsPrompt(MysteryCase mysteryCase) {
+        return "Mystery: " + mysteryCase.crime + " Victim: " + mysteryCase.victim + ", at " + mysteryCase.location +
+            ", " + mysteryCase.time + ". The culprit is " + mysteryCase.culprit + ": " + mysteryCase.solution + " " +
+            "Suspects: " + castList() + ". " +
+            "For every suspect write a motive, the alibi they claim, whether the alibi really holds " +
+            "(it must not hold for the culprit) and a secret they hide that has nothing to do with the crime. " +
+            "Answer with JSON only, in this form: {\"suspects\": [{\"name\": \"suspect name exactly as given\", " +
+            "\"motive\": \"...\", \"alibi\": \"...\", \"alibiHolds\": true, \"secret\": \"...\"}]}";
+    }
+
+    private String cluesPrompt(MysteryCase mysteryCase) {
+        StringBuilder alibis = new StringBuilder();
+        for (Suspect suspect : mysteryCase.suspects) {
+            alibis.append(suspect.name).append(" claims: ").append(suspect.alibi).append(' ');
+        }
+        return "Mystery: " + mysteryCase.crime + " The culprit is " + mysteryCase.culprit + ": " +
+            mysteryCase.solution + " " + alibis +
+            "Write 4 clues the detective can find in the village. At least 2 must point to " + mysteryCase.culprit +
+            ", the others can point to other suspects as red herrings. " +
+            "Answer with JSON only, in this form: {\"clues\": [{\"description\": \"what is found\", " +
+            "\"location\": \"where in the village\", \"pointsTo\": \"suspect name\"}]}";
+    }
+
+    // ---- Checks ----
+
+    private String checkOutline(MysteryCase outline, MysteryCase mysteryCase) {
+        if (isBlank(outline.title) || isBlank(outline.crime)) return "missing title or crime";
+        String culprit = castName(outline.culprit);
+        if (culprit == null) return "culprit '" + outline.culprit + "' is not a suspect";
+        mysteryCase.title = outline.title.trim();
+        mysteryCase.crime = outline.crime.trim();
+        mysteryCase.victim = orDefault(outline.victim, "a villager");
+        mysteryCase.location = orDefault(outline.location, "the village");
+        mysteryCase.time = orDefault(outline.time, "last night");
+        mysteryCase.culprit = culprit;
+        mysteryCase.solution = orDefault(outline.solution, "");
+        return null;
+    }
+
+    private String checkSuspects(SuspectList list, MysteryCase mysteryCase) {
+        if (list.suspects == null) return "no suspects";
+        List<Suspect> suspects = new ArrayList<>();
+        for (Map.Entry<String, String> member : cast.entrySet()) {
+            Suspect found = null;
+            for (Suspect suspect : list.suspects) {
+                if (suspect != null && member.getKey().equalsIgnoreCase(castName(suspect.name))) found = suspect;
+            }
+            if (found == null || isBlank(found.alibi)) return "no alibi for " + member.getKey();
+            found.name = member.getKey();
+            found.role = member.getValue();
+            found.motive = orDefault(found.motive, "they had argued with " + mysteryCase.victim);
+            if (mysteryCase.isCulprit(found.name)) found.alibiHolds = false; // Small models forget this
+            suspects.add(found);
+        }
+        mysteryCase.suspects = suspects.toArray(new Suspect[0]);
+        return null;
+    }
+
+    private String checkClues(ClueList list, MysteryCase mysteryCase) {
+        if (list.clues == null) return "no clues";
+        List<Clue> clues = new ArrayList<>();
+        int againstCulprit = 0;
+        for (Clue clue : list.clues) {
+            if (clue == null || isBlank(clue.description)) continue;
+            clue.pointsTo = castName(clue.pointsTo);
+            clue.location = orDefault(clue.location, mysteryCase.location);
+            if (mysteryCase.isCulprit(clue.pointsTo)) againstCulprit++;
+            clues.add(clue);
+        }
+        if (againstCulprit == 0) return "no clue points to the culprit";
+        mysteryCase.clues = clues.toArray(new Clue[0]);
+        return null;
+    }
+
+    /**
+     * Cast member matching a name the model wrote (any case, with or without "the")
+     */
+    private String castName(String name) {
+        if (name == null) return null;
+        String cleaned = name.trim().replaceFirst("(?i)^the ", "");
+        for (String member : cast.keySet()) {
+            if (member.equalsIgnoreCase(cleaned)) return member;
+        }
+        return null;
+    }
+
+    // ---- Disk cache ----
+
+    private List<MysteryCase> loadCachedCases() {
+        List<MysteryCase> cases = new ArrayList<>();
+        if (cacheDir == null || !Files.isDirectory(cacheDir)) return cases;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".json")).sorted().forEach(file -> {
+                try {
+                    MysteryCase mysteryCase = newJson().fromJson(MysteryCase.class,
+                        new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                    if (mysteryCase != null && mysteryCase.suspects != null && castMatches(mysteryCase)) {
+                        cases.add(mysteryCase);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Skipping unreadable case file " + file + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not read case cache: " + e.getMessage());
+        }
+        return cases;
+    }
+
+    /**
+     * Cached cases are only usable if they were written for the same villagers
+     */
+    private boolean castMatches(MysteryCase mysteryCase) {
+        if (mysteryCase.suspects.length != cast.size()) return false;
+        for (String name : cast.keySet()) {
+            if (mysteryCase.getSuspect(name) == null) return false;
+        }
+        return true;
+    }
+
+    private void saveCase(MysteryCase mysteryCase) {
+        if (cacheDir == null) return;
+        try {
+            Files.createDirectories(cacheDir);
+            Json json = newJson();
+            json.setOutputType(JsonWriter.OutputType.json);
+            Files.write(cacheDir.resolve(mysteryCase.id + ".json"),
+                json.prettyPrint(json.toJson(mysteryCase, MysteryCase.class)).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not save case " + mysteryCase.id + ": " + e.getMessage());
+        }
+    }
+
+    private void deleteCached(MysteryCase mysteryCase) {
+        if (cacheDir == null) return;
+        try {
+            Files.deleteIfExists(cacheDir.resolve(mysteryCase.id + ".json"));
+        } catch (IOException e) {
+            System.err.println("Could not delete case " + mysteryCase.id + ": " + e.getMessage());
+        }
+    }
+
+    // ---- Helpers ----
+
+    private void progress(int stage, String description) {
+        status = "stage " + stage + "/" + STAGES + ": " + description;
+        ProgressListener current = listener;
+        if (current != null) {
+            current.onProgress(stage, STAGES, description);
+        }
+    }
+
+    private static Json newJson() {
+        Json json = new Json(); // Cheap enough for a few calls per case, and never shared between threads
+        json.setIgnoreUnknownFields(true); // Models like to add fields of their own
+        return json;
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+
+    private static String orDefault(String text, String fallback) {
+        return isBlank(text) ? fallback : text.trim();
+    }
+
+    private static String describe(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    // Statistics getters
+    public synchronized int getReadyCount() { return ready.size(); }
+    public synchronized boolean isGenerating() { return generating != null; }
+    public synchronized int getGenerated() { return generated; }
+    public synchronized int getFailed() { return failed; }
+    public synchronized int getLoadedFromDisk() { return loadedFromDisk; }
+    public long getLastGenerationMillis() { return lastGenerationMillis; }
+    public String getStatus() { return status; }
+
+    /**
+     * Get simple debug info about case generation
+     */
+    public synchronized String getDebugInfo() {
+        return String.format("cases: %d ready, %s, %d generated (last took %d ms), %d loaded from disk, %d failed",
+            ready.size(), status, generated, lastGenerationMillis, loadedFromDisk, failed);
+    }
+
+    // Stage answers that are lists - JSON mode needs an object at the top level
+    public static class SuspectList {
+        public Suspect[] suspects;
+    }
+
+    public static class ClueList {
+        public Clue[] clues;
+    }
+}
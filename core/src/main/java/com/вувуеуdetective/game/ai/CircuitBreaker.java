@@ -0,0 +1,126 @@
+package com.вувуеуdetective.game.ai;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing.
+ * CLOSED: requests go through, consecutive failures are counted.
+ * OPEN: requests fail immediately until the backoff window has passed.
+ * HALF_OPEN: one trial request is let through - success closes the breaker,
+ * failure opens it again with a longer backoff.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    private State state = State.CLOSED; // Guarded by "this"
+    private int consecutiveFailures = 0;
+    private long backoffMs;
+    private long openUntil = 0;
+    private boolean trialRunning = false;
+
+    // Statistics
+    private int timesOpened = 0;
+    private long rejected = 0;
+
+    public CircuitBreaker(String name, int failureThreshold, long initialBackoffMs, long maxBackoffMs) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = Math.max(initialBackoffMs, maxBackoffMs);
+        this.backoffMs = initialBackoffMs;
+    }
+
+    /**
+     * May a request be sent now? In HALF_OPEN only the first caller gets a yes,
+     * and that caller must report the outcome with recordSuccess/recordFailure.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!trialRunning) {
+                    trialRunning = true;
+                    return true;
+                }
+                rejected++;
+                return false;
+            default:
+                rejected++;
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            System.out.println("Circuit " + name + " closed - endpoint is back");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        backoffMs = initialBackoffMs;
+        trialRunning = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            // Trial failed - wait longer this time
+            backoffMs = Math.min(maxBackoffMs, backoffMs * 2);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Trial request ended without an answer either way (e.g. cancelled) - let another one try
+     */
+    public synchronized void releaseTrial() {
+        trialRunning = false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + backoffMs;
+        trialRunning = false;
+        timesOpened++;
+        System.err.println("Circuit " + name + " open for " + backoffMs + " ms after "
+            + consecutiveFailures + " failures");
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            return State.HALF_OPEN; // Next request will be the trial
+        }
+        return state;
+    }
+
+    /**
+     * Milliseconds until an open breaker lets a trial request through (0 if not open)
+     */
+    public synchronized long getRetryInMillis() {
+        return state == State.OPEN ? Math.max(0, openUntil - System.currentTimeMillis()) : 0;
+    }
+
+    // Statistics getters
+    public String getName() { return name; }
+    public synchronized int getConsecutiveFailures() { return consecutiveFailures; }
+    public synchronized int getTimesOpened() { return timesOpened; }
+    public synchronized long getRejected() { return rejected; }
+
+    /**
+     * Get simple debug info about the breaker
+     */
+    public synchronized String getDebugInfo() {
+        return String.format("circuit %s: %s, %d failures in a row, opened %d times, %d requests rejected",
+            name, getState(), consecutiveFailures, timesOpened, rejected);
+    }
+}
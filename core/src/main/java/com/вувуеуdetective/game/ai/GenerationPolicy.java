@@ -0,0 +1,225 @@
+package com.вувуеуdetective.game.ai;
+
+import com.вувуеуdetective.game.ai.OllamaClient.GenerationOptions;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaResponse;
+import com.вувуеуdetective.game.ai.OllamaRouter.Task;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generation limits (Ollama "options") per kind of request, adapted to how fast
+ * the model really is. Each task has a latency target; every finished request
+ * reports its time and Ollama's eval stats:
+ *
+ * - num_predict follows AIMD: a missed target cuts it by a quarter, a request
+ *   well inside the target gives back a few tokens. It is also capped by what
+ *   the measured tokens/sec can produce inside the target.
+ * - num_ctx is per model (a different num_ctx makes Ollama reload the model, so
+ *   all tasks on a model share one) and moves in powers of two, at most once a
+ *   minute: halved when a task keeps missing with num_predict already at its
+ *   minimum, doubled back (up to the default) after a run of fast requests.
+ * - Stop sequences end dialogue at the point the model starts a new turn.
+ */
+public class GenerationPolicy {
+
+    // AIMD on num_predict
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final int INCREASE_STEP = 8;
+    private static final double HEADROOM_FRACTION = 0.6; // Faster than this share of the target = room to grow
+
+    // num_ctx per model
+    public static final int DEFAULT_CONTEXT = 2048;
+    private static final int MIN_CONTEXT = 1024;
+    private static final int MISSES_BEFORE_CONTEXT_CUT = 3;
+    private static final int FAST_BEFORE_CONTEXT_GROWTH = 10;
+    private static final long CONTEXT_CHANGE_COOLDOWN_MS = 60000;
+
+    // Weight of the newest sample in the rate and overhead averages
+    private static final double EWMA_ALPHA = 0.2;
+
+    /**
+     * Limits and state for one kind of request
+     */
+    private static class TaskLimits {
+        long targetMillis;
+        final int minPredict;
+        final int maxPredict;
+        final String[] stop;
+
+        int predict;                 // Current AIMD limit
+        double overheadMillis = -1;  // Time not spent generating (queue at Ollama, prompt, load), EWMA
+        int missesInRow = 0;
+        int fastInRow = 0;
+
+        // Statistics
+        long requests = 0;
+        long misses = 0;
+        long truncated = 0;          // Hit num_predict
+
+        TaskLimits(long targetMillis, int minPredict, int maxPredict, String... stop) {
+            this.targetMillis = targetMillis;
+            this.minPredict = minPredict;
+            this.maxPredict = maxPredict;
+            this.predict = maxPredict;
+            this.stop = stop;
+        }
+    }
+
+    /**
+     * Context size and speed of one model
+     */
+    private static class ModelState {
+        int context = DEFAULT_CONTEXT;
+        long lastContextChange = 0;
+        double tokensPerSecond = -1; // EWMA of eval_count / eval_duration
+    }
+
+    private final Map<Task, TaskLimits> limits = new EnumMap<>(Task.class); // Guarded by "this"
+    private final Map<String, ModelState> models = new HashMap<>();        // Guarded by "this"
+
+    public GenerationPolicy() {
+        // A greeting is one line; dialogue two sentences. Both end where the model starts another turn.
+        limits.put(Task.GREETING, new TaskLimits(2500, 24, 64, "\n\n", "Detective:"));
+        limits.put(Task.INTERROGATION, new TaskLimits(5000, 32, 120, "\n\n", "Detective:", "Detective asks:"));
+        // Summaries: nobody waits, but they must not run away either
+        limits.put(Task.BACKGROUND, new TaskLimits(60000, 256, 1024));
+        // Cut-off JSON doesn't parse, so a slow model never shrinks it below a whole case stage
+        limits.put(Task.STRUCTURED, new TaskLimits(90000, 1024, 1536));
+        // Gossip keeps one line anyway - stop there instead of generating a paragraph nobody reads
+        limits.put(Task.GOSSIP, new TaskLimits(20000, 24, 48, "\n"));
+        limits.put(Task.GENERAL, new TaskLimits(8000, 64, 256));
+    }
+
+    /**
+     * Options for a new request of this task on this model (null for tasks without limits)
+     */
+    public synchronized GenerationOptions optionsFor(Task task, String model) {
+        TaskLimits taskLimits = limits.get(task);
+        if (taskLimits == null) return null;
+        ModelState state = modelState(model);
+
+        GenerationOptions options = new GenerationOptions();
+        options.num_predict = Math.max(taskLimits.minPredict, Math.min(taskLimits.predict, affordableTokens(taskLimits, state)));
+        options.num_ctx = state.context;
+        options.stop = taskLimits.stop.length > 0 ? taskLimits.stop : null;
+        return options;
+    }
+
+    /**
+     * Tokens the model can generate inside the task's target at the measured speed
+     */
+    private static int affordableTokens(TaskLimits task, ModelState state) {
+        if (state.tokensPerSecond <= 0 || task.overheadMillis < 0) return task.maxPredict; // Not measured yet
+        double generateMillis = task.targetMillis - task.overheadMillis;
+        return (int) Math.max(0, generateMillis * state.tokensPerSecond / 1000);
+    }
+
+    /**
+     * Context size requests to this model use - also for warm-up, so the model is
+     * loaded with the same num_ctx the first real request asks for
+     */
+    public synchronized int getContextSize(String model) {
+        return modelState(model).context;
+    }
+
+    /**
+     * A request finished: adapt the limits of its task and model
+     */
+    public synchronized void record(Task task, String model, GenerationOptions sent, long millis,
+                                    OllamaResponse response) {
+        TaskLimits taskLimits = limits.get(task);
+        if (taskLimits == null) return;
+        ModelState state = modelState(model);
+        taskLimits.requests++;
+
+        // Generation speed and everything around it
+        if (response.eval_count > 0 && response.eval_duration > 0) {
+            double rate = response.eval_count * 1e9 / response.eval_duration;
+            state.tokensPerSecond = state.tokensPerSecond < 0 ? rate
+                : state.tokensPerSecond + EWMA_ALPHA * (rate - state.tokensPerSecond);
+            double overhead = Math.max(0, millis - response.eval_duration / 1e6);
+            taskLimits.overheadMillis = taskLimits.overheadMillis < 0 ? overhead
+                : taskLimits.overheadMillis + EWMA_ALPHA * (overhead - taskLimits.overheadMillis);
+        }
+        if (sent != null && response.eval_count >= sent.num_predict) {
+            taskLimits.truncated++;
+        }
+
+        long now = System.currentTimeMillis();
+        if (millis > taskLimits.targetMillis) {
+            taskLimits.misses++;
+            taskLimits.missesInRow++;
+            taskLimits.fastInRow = 0;
+            taskLimits.predict = Math.max(taskLimits.minPredict, (int) (taskLimits.predict * DECREASE_FACTOR));
+            // Output is already as short as it gets - make the prompt side cheaper
+            if (taskLimits.predict == taskLimits.minPredict && taskLimits.missesInRow >= MISSES_BEFORE_CONTEXT_CUT
+                    && state.context > MIN_CONTEXT && now - state.lastContextChange > CONTEXT_CHANGE_COOLDOWN_MS) {
+                state.context /= 2;
+                state.lastContextChange = now;
+                taskLimits.missesInRow = 0;
+                System.out.println("Generation policy: " + model + " num_ctx down to " + state.context
+                    + " (" + task + " keeps missing " + taskLimits.targetMillis + " ms)");
+            }
+        } else if (millis < taskLimits.targetMillis * HEADROOM_FRACTION) {
+            taskLimits.missesInRow = 0;
+            taskLimits.fastInRow++;
+            // Give context back before length, undoing the cuts in reverse order
+            if (state.context < DEFAULT_CONTEXT
+                    && taskLimits.fastInRow >= FAST_BEFORE_CONTEXT_GROWTH
+                    && now - state.lastContextChange > CONTEXT_CHANGE_COOLDOWN_MS) {
+                state.context *= 2;
+                state.lastContextChange = now;
+                taskLimits.fastInRow = 0;
+                System.out.println("Generation policy: " + model + " num_ctx back up to " + state.context);
+            } else {
+                taskLimits.predict = Math.min(taskLimits.maxPredict, taskLimits.predict + INCREASE_STEP);
+            }
+        } else {
+            taskLimits.missesInRow = 0;
+            taskLimits.fastInRow = 0;
+        }
+    }
+
+    private ModelState modelState(String model) {
+        return models.computeIfAbsent(model, name -> new ModelState());
+    }
+
+    /**
+     * Change a task's latency target
+     */
+    public synchronized void setTarget(Task task, long targetMillis) {
+        TaskLimits taskLimits = limits.get(task);
+        if (taskLimits != null) taskLimits.targetMillis = targetMillis;
+    }
+
+    // Statistics getters
+    public synchronized int getPredictLimit(Task task) {
+        TaskLimits taskLimits = limits.get(task);
+        return taskLimits == null ? 0 : taskLimits.predict;
+    }
+
+    public synchronized double getTokensPerSecond(String model) {
+        ModelState state = models.get(model);
+        return state == null ? -1 : state.tokensPerSecond;
+    }
+
+    /**
+     * Get simple debug info about the generation limits
+     */
+    public synchronized String getDebugInfo() {
+        StringBuilder info = new StringBuilder("generation:");
+        for (Map.Entry<String, ModelState> entry : models.entrySet()) {
+            info.append(String.format(" %s %.1f tok/s, num_ctx %d;", entry.getKey(),
+                entry.getValue().tokensPerSecond, entry.getValue().context));
+        }
+        for (Map.Entry<Task, TaskLimits> entry : limits.entrySet()) {
+            TaskLimits taskLimits = entry.getValue();
+            if (taskLimits.requests == 0) continue;
+            info.append(String.format(" %s num_predict %d (target %d ms, %d/%d missed, %d cut off);",
+                entry.getKey(), taskLimits.predict, taskLimits.targetMillis, taskLimits.misses, taskLimits.requests, taskLimits.truncated));
+        }
+        return info.toString();
+    }
+}
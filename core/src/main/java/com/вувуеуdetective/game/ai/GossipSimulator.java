@@ -0,0 +1,162 @@
+package com.вувуеуdetective.game.ai;
+
+import com.вувуеуdetective.game.ai.NpcKnowledge.Fact;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Off-screen life: villagers tell each other what they saw and heard, one LLM
+ * call per exchange, and the listener remembers it in NpcKnowledge. Later,
+ * the detective can hear the Innkeeper repeat what the Blacksmith said.
+ *
+ * Gossip is the least important model traffic there is, so it only starts when
+ * the request scheduler is completely idle, one exchange at a time, and each
+ * exchange must fit into a tokens-per-second budget.
+ * Call update() every frame on the game thread.
+ */
+public class GossipSimulator {
+
+    // How often we look for a chance to gossip
+    private static final float CHECK_INTERVAL_SECONDS = 2f;
+    // Pause after a failed exchange (Ollama down, request dropped...)
+    private static final float FAILURE_PAUSE_SECONDS = 30f;
+    // Reply size we reserve for before the real count is known (the GOSSIP task's num_predict cap)
+    private static final int REPLY_TOKEN_ESTIMATE = 48;
+    private static final int MAX_GOSSIP_CHARS = 240;
+
+    private final OllamaClient ollamaClient;
+    private final NpcKnowledge knowledge;
+    private final TokenBudget budget;
+    private final Map<String, String> cast; // NPC name -> role
+    private final Random random = new Random();
+
+    private float untilNextCheck = CHECK_INTERVAL_SECONDS;
+    private volatile CompletableFuture<OllamaResponse> running = null;
+    private volatile boolean lastFailed = false;
+    private volatile boolean enabled = true;
+
+    // Statistics
+    private int exchanges = 0;        // Gossip learned
+    private int repeats = 0;          // Listener already knew it
+    private int failed = 0;
+    private int skippedBusy = 0;      // Scheduler had other work
+    private int skippedBudget = 0;    // Budget exhausted
+
+    public GossipSimulator(OllamaClient ollamaClient, NpcKnowledge knowledge, TokenBudget budget,
+                           Map<String, String> cast) {
+        this.ollamaClient = ollamaClient;
+        this.knowledge = knowledge;
+        this.budget = budget;
+        this.cast = new LinkedHashMap<>(cast);
+    }
+
+    /**
+     * Start an exchange if the model is idle and the budget allows it
+     */
+    public void update(float deltaTime) {
+        if (!enabled || cast.size() < 2 || running != null) return;
+        untilNextCheck -= deltaTime;
+        if (untilNextCheck > 0) return;
+        untilNextCheck = CHECK_INTERVAL_SECONDS;
+
+        if (lastFailed) {
+            lastFailed = false;
+            untilNextCheck = FAILURE_PAUSE_SECONDS;
+            return;
+        }
+        if (!ollamaClient.getScheduler().isIdle()) {
+            synchronized (this) { skippedBusy++; }
+            return;
+        }
+
+        // Pick who talks to whom
+        List<String> names = new ArrayList<>(cast.keySet());
+        String speaker = names.remove(random.nextInt(names.size()));
+        String listener = names.get(random.nextInt(names.size()));
+        String speakerRole = cast.get(speaker);
+        String listenerRole = cast.get(listener);
+
+        // Roughly 4 characters per token
+        long estimate = ollamaClient.buildGossipPrompt(speaker, speakerRole, listener, listenerRole).length() / 4
+            + REPLY_TOKEN_ESTIMATE;
+        if (!budget.tryReserve(estimate)) {
+            synchronized (this) { skippedBudget++; }
+            return;
+        }
+
+        // What the speaker passes on is at least one hop further from the source
+        List<Fact> heard = knowledge.getFacts(speaker, 1);
+        int hops = heard.isEmpty() ? 1 : heard.get(0).hops + 1;
+
+        CompletableFuture<OllamaResponse> exchange = ollamaClient.askGossip(speaker, speakerRole, listener, listenerRole);
+        running = exchange;
+        exchange.whenComplete((response, error) -> {
+            long spent = response == null ? 0 : response.prompt_eval_count + response.eval_count;
+            budget.settle(estimate, spent);
+            String text = error == null ? clean(response.response) : null;
+            if (exchange.isCancelled()) {
+                // Paused - not a failure
+            } else if (text == null) {
+                synchronized (this) { failed++; }
+                lastFailed = true;
+            } else if (knowledge.add(listener, new Fact(speaker, text, hops))) {
+                synchronized (this) { exchanges++; }
+                System.out.println("Gossip: " + speaker + " -> " + listener + ": " + text
+                    + String.format(" (%d tokens, budget %.0f%% used)", spent, budget.getUtilization() * 100));
+            } else {
+                synchronized (this) { repeats++; }
+            }
+            running = null;
+        });
+    }
+
+    /**
+     * One line of speech from the model's answer, or null if there is nothing usable
+     */
+    private static String clean(String answer) {
+        if (answer == null) return null;
+        String text = answer.trim();
+        int newline = text.indexOf('\n');
+        if (newline > 0) text = text.substring(0, newline).trim();
+        if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")) {
+            text = text.substring(1, text.length() - 1).trim();
+        }
+        if (text.length() > MAX_GOSSIP_CHARS) text = text.substring(0, MAX_GOSSIP_CHARS) + "...";
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * Pause or resume gossip; a running exchange is cancelled when pausing
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        CompletableFuture<OllamaResponse> current = running;
+        if (!enabled && current != null) current.cancel(true);
+    }
+
+    public TokenBudget getBudget() {
+        return budget;
+    }
+
+    // Statistics getters
+    public boolean isRunning() { return running != null; }
+    public synchronized int getExchanges() { return exchanges; }
+    public synchronized int getRepeats() { return repeats; }
+    public synchronized int getFailed() { return failed; }
+    public synchronized int getSkippedBusy() { return skippedBusy; }
+    public synchronized int getSkippedBudget() { return skippedBudget; }
+
+    /**
+     * Get simple debug info about gossip and its budget
+     */
+    public synchronized String getDebugInfo() {
+        return String.format("gossip: %d exchanges, %d repeats, %d failed, skipped %d busy / %d over budget; %s",
+            exchanges, repeats, failed, skippedBusy, skippedBudget, budget.getDebugInfo());
+    }
+}
@@ -0,0 +1,155 @@
+package com.вувуеуdetective.game.ai;
+
+import com.badlogic.gdx.utils.Array;
+import com.вувуеуdetective.game.entities.NPC;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Speculative greeting generation - starts the AI greeting while the player is
+ * still walking up to an NPC, so pressing E can show it right away.
+ * Call update() every frame and take() when the dialogue actually starts.
+ */
+public class GreetingPrefetcher {
+
+    // Start generating inside this radius (interaction itself is 50px)
+    public static final float APPROACH_RADIUS = 120f;
+    // Cancel only once the player is clearly walking away (avoids start/cancel flicker at the edge)
+    public static final float LEAVE_RADIUS = 160f;
+    // Speculative requests must not crowd out real ones
+    public static final int MAX_SPECULATIVE_REQUESTS = 2;
+
+    private final OllamaClient ollamaClient;
+    private final Function<String, String> roleForName;
+
+    // Running or finished greetings per NPC, not yet shown
+    private final Map<NPC, CompletableFuture<String>> prefetched = new HashMap<>();
+    // NPCs already greeted - not prefetched again until the player has walked away
+    private final Set<NPC> greeted = new HashSet<>();
+
+    // Statistics
+    private int started = 0;
+    private int readyHits = 0;      // Greeting was complete when E was pressed
+    private int inFlightHits = 0;   // Still generating, but with a head start
+    private int misses = 0;         // Nothing prefetched for this NPC
+    private int cancelled = 0;      // Player walked away before it finished
+    private int wasted = 0;         // Finished but the player never asked for it
+
+    public GreetingPrefetcher(OllamaClient ollamaClient, Function<String, String> roleForName) {
+        this.ollamaClient = ollamaClient;
+        this.roleForName = roleForName;
+    }
+
+    /**
+     * Start greetings for NPCs the player approaches, drop the ones they walked away from.
+     * Must be called on the game thread.
+     */
+    public void update(float playerX, float playerY, Array<NPC> npcs) {
+        // Drop speculation for NPCs the player left behind
+        Iterator<Map.Entry<NPC, CompletableFuture<String>>> it = prefetched.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<NPC, CompletableFuture<String>> entry = it.next();
+            if (!entry.getKey().isPlayerNearby(playerX, playerY, LEAVE_RADIUS)) {
+                discard(entry.getValue());
+                it.remove();
+            }
+        }
+        greeted.removeIf(npc -> !npc.isPlayerNearby(playerX, playerY, LEAVE_RADIUS));
+
+        // Start new ones, nearest NPCs are usually found first anyway
+        for (NPC npc : npcs) {
+            if (prefetched.containsKey(npc) || greeted.contains(npc)) continue;
+            if (getRunningCount() >= MAX_SPECULATIVE_REQUESTS) break;
+            if (npc.isPlayerNearby(playerX, playerY, APPROACH_RADIUS)) {
+                String role = roleForName.apply(npc.getName());
+                // If the player presses E mid-generation, their own streaming request
+                // joins this one and receives the tokens live
+                prefetched.put(npc, ollamaClient.prefetchNPCGreeting(npc.getName(), role));
+                started++;
+            }
+        }
+    }
+
+    /**
+     * Hand over the prefetched greeting for an NPC the player is talking to.
+     * Returns null if there is none (or it failed). The caller owns the returned future.
+     * The NPC isn't prefetched again until the player leaves LEAVE_RADIUS - they
+     * are still standing next to it when the dialogue closes.
+     */
+    public CompletableFuture<String> take(NPC npc) {
+        greeted.add(npc);
+        CompletableFuture<String> greeting = prefetched.remove(npc);
+        if (greeting != null && greeting.isCompletedExceptionally()) {
+            greeting = null; // Dropped by the scheduler or Ollama failed - ask normally
+        }
+        if (greeting == null) {
+            misses++;
+        } else if (greeting.isDone()) {
+            readyHits++;
+        } else {
+            inFlightHits++;
+        }
+        return greeting;
+    }
+
+    /**
+     * Cancel all speculation (e.g. when the game shuts down)
+     */
+    public void clear() {
+        for (CompletableFuture<String> greeting : prefetched.values()) {
+            discard(greeting);
+        }
+        prefetched.clear();
+        greeted.clear();
+    }
+
+    private void discard(CompletableFuture<String> greeting) {
+        if (greeting.isCompletedExceptionally()) {
+            return; // Never produced anything
+        }
+        if (greeting.isDone()) {
+            wasted++;
+        } else {
+            greeting.cancel(true);
+            cancelled++;
+        }
+    }
+
+    private int getRunningCount() {
+        int running = 0;
+        for (CompletableFuture<String> greeting : prefetched.values()) {
+            if (!greeting.isDone()) running++;
+        }
+        return running;
+    }
+
+    // Statistics getters
+    public int getStarted() { return started; }
+    public int getReadyHits() { return readyHits; }
+    public int getInFlightHits() { return inFlightHits; }
+    public int getMisses() { return misses; }
+    public int getCancelled() { return cancelled; }
+    public int getWasted() { return wasted; }
+
+    /**
+     * Share of dialogues that found a finished greeting waiting
+     */
+    public float getHitRate() {
+        int total = readyHits + inFlightHits + misses;
+        return total == 0 ? 0f : (float) readyHits / total;
+    }
+
+    /**
+     * Get simple debug info about prefetching
+     */
+    public String getDebugInfo() {
+        return String.format("prefetch: %d started, %d ready hits, %d in-flight hits, %d misses (%.0f%% hit rate), %d cancelled, %d wasted",
+            started, readyHits, inFlightHits, misses, getHitRate() * 100, cancelled, wasted);
+    }
+}
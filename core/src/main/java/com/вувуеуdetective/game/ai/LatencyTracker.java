@@ -0,0 +1,57 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.Arrays;
+
+/**
+ * Rolling window of recent request latencies with percentile lookups.
+ * Used to pick hedging delays and to report how fast the model answers.
+ */
+public class LatencyTracker {
+
+    private final long[] samples; // Ring buffer, milliseconds
+    private int count = 0;        // Valid samples (<= samples.length)
+    private int next = 0;         // Write position
+    private long total = 0;       // All samples ever recorded
+
+    public LatencyTracker(int windowSize) {
+        samples = new long[Math.max(1, windowSize)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+        total++;
+    }
+
+    /**
+     * Latency below which the given fraction of recent samples fall (0.95 = p95).
+     * Returns 0 if nothing was recorded yet.
+     */
+    public synchronized long percentile(double fraction) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Samples currently in the window
+     */
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    public synchronized long getTotalCount() {
+        return total;
+    }
+
+    /**
+     * Get simple debug info (p50/p95/p99 over the window)
+     */
+    public String getDebugInfo() {
+        return String.format("p50 %d ms, p95 %d ms, p99 %d ms (%d samples)",
+            percentile(0.50), percentile(0.95), percentile(0.99), getSampleCount());
+    }
+}
@@ -0,0 +1,400 @@
+package com.вувуеуdetective.game.ai;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vector index for one NPC's long-term memory: embeddings of past exchanges
+ * and their text, searched by cosine similarity.
+ *
+ * Vectors are normalized on insert and kept in one flat float[] (entry i is at
+ * [i * dimension, (i + 1) * dimension)), so a query is a brute-force dot product
+ * over a single array - a few thousand 768-dim entries take about a millisecond,
+ * no tree or graph needed at this size.
+ *
+ * With a file it is persistent: vectors are written through to a memory-mapped
+ * file (header + raw floats, grown by remapping) and texts are appended to a
+ * side file, one escaped line per entry. The count in the header is bumped last,
+ * so a crash mid-insert loses at most that entry. The header also names the
+ * embedding model, and a file made by another model is never opened. Thread-safe.
+ */
+public class MemoryIndex {
+
+    /**
+     * One search result
+     */
+    public static class Hit {
+        public final String text;
+        public final float score; // Cosine similarity, -1..1
+        public final long createdAt;
+
+        Hit(String text, float score, long createdAt) {
+            this.text = text;
+            this.score = score;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final int MAGIC = 0x4D454D32; // "MEM2"
+    // Model names are stored in a fixed slot, longer ones are cut
+    private static final int MODEL_BYTES = 64;
+    // magic, dimension, count, model length (ints), model name (UTF-8, padded to MODEL_BYTES),
+    // then per entry: createdAt (long) + dimension floats
+    private static final int HEADER_BYTES = 16 + MODEL_BYTES;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int dimension;
+    private final String model; // Embedding model - null when memory only
+    private float[] vectors;
+    private long[] createdAt;
+    private String[] texts;
+    private int count = 0;
+
+    // Persistence - null when memory only
+    private final Path vectorFile;
+    private final Path textFile;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    // Statistics
+    private long searches = 0;
+    private long searchNanos = 0;
+
+    /**
+     * Memory-only index
+     */
+    public MemoryIndex(int dimension) {
+        this.dimension = dimension;
+        this.model = null;
+        this.vectorFile = null;
+        this.textFile = null;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private MemoryIndex(String model, int dimension, Path vectorFile, Path textFile) {
+        this.dimension = dimension;
+        this.model = model;
+        this.vectorFile = vectorFile;
+        this.textFile = textFile;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Open the index of the given embedding model stored in vectorFile/textFile,
+     * or create it. Fails without touching the files if they hold another
+     * model's vectors, another dimension or something that isn't an index.
+     */
+    public static MemoryIndex open(Path vectorFile, Path textFile, String model, int dimension) throws IOException {
+        MemoryIndex index = new MemoryIndex(model, dimension, vectorFile, textFile);
+        Files.createDirectories(vectorFile.toAbsolutePath().getParent());
+        index.channel = FileChannel.open(vectorFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            index.load();
+        } catch (IOException e) {
+            index.channel.close();
+            index.channel = null;
+            index.mapped = null;
+            throw e;
+        }
+        return index;
+    }
+
+    private void load() throws IOException {
+        int stored = 0;
+        if (channel.size() >= HEADER_BYTES) {
+            map(channel.size());
+            int magic = mapped.getInt(0);
+            if (magic == MAGIC) {
+                String storedModel = readModel();
+                if (mapped.getInt(4) != dimension || !storedModel.equals(new String(modelBytes(), StandardCharsets.UTF_8))) {
+                    throw new IOException(vectorFile.getFileName() + " holds " + storedModel + " vectors of "
+                        + mapped.getInt(4) + " dimensions, not " + model + " of " + dimension);
+                }
+                stored = mapped.getInt(8);
+            } else if (magic != 0) { // 0 = crashed before the header was written
+                throw new IOException(vectorFile.getFileName() + " is not a memory index");
+            }
+        } else if (channel.size() > 0) {
+            throw new IOException(vectorFile.getFileName() + " is not a memory index");
+        }
+
+        // Texts first: an entry only counts once its text made it to disk too
+        List<String> lines = new ArrayList<>();
+        if (Files.exists(textFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(textFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(unescape(line));
+                }
+            }
+        }
+        int usable = (int) Math.min(Math.min(stored, lines.size()),
+            Math.max(0, channel.size() - HEADER_BYTES) / entryBytes());
+
+        allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, usable)) * 2));
+        for (int i = 0; i < usable; i++) {
+            long offset = offsetOf(i);
+            createdAt[i] = mapped.getLong((int) offset);
+            for (int d = 0; d < dimension; d++) {
+                vectors[i * dimension + d] = mapped.getFloat((int) (offset + 8 + d * 4L));
+            }
+            texts[i] = lines.get(i);
+        }
+        count = usable;
+
+        if (usable != lines.size()) {
+            rewriteTexts(); // Drop the text of a half-written entry
+        }
+        map(Math.max(channel.size(), offsetOf(Math.max(INITIAL_CAPACITY, usable * 2))));
+        byte[] name = modelBytes();
+        mapped.putInt(4, dimension);
+        mapped.putInt(8, count);
+        mapped.putInt(12, name.length);
+        for (int i = 0; i < name.length; i++) {
+            mapped.put(16 + i, name[i]);
+        }
+        mapped.putInt(0, MAGIC); // Last - a half-written header still reads as empty
+    }
+
+    private String readModel() {
+        int length = Math.max(0, Math.min(MODEL_BYTES, mapped.getInt(12)));
+        byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) {
+            name[i] = mapped.get(16 + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The model name as stored in the header, cut to MODEL_BYTES
+     */
+    private byte[] modelBytes() {
+        byte[] name = model.getBytes(StandardCharsets.UTF_8);
+        return name.length <= MODEL_BYTES ? name : Arrays.copyOf(name, MODEL_BYTES);
+    }
+
+    /**
+     * Add a memory. The vector is copied and normalized; zero vectors are ignored.
+     */
+    public synchronized void add(float[] vector, String text) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + vector.length);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) return;
+        float scale = (float) (1 / Math.sqrt(norm));
+
+        if (count == texts.length) {
+            grow();
+        }
+        int base = count * dimension;
+        for (int d = 0; d < dimension; d++) {
+            vectors[base + d] = vector[d] * scale;
+        }
+        createdAt[count] = System.currentTimeMillis();
+        texts[count] = text;
+
+        if (channel != null) {
+            try {
+                persist(count);
+            } catch (IOException e) {
+                System.err.println("Could not save memory to " + vectorFile + ": " + e.getMessage());
+            }
+        }
+        count++;
+    }
+
+    /**
+     * The k entries most similar to the query (best first), skipping those below minScore
+     */
+    public synchronized List<Hit> search(float[] query, int k, float minScore) {
+        long start = System.nanoTime();
+        List<Hit> hits = new ArrayList<>();
+        if (count == 0 || k <= 0 || query.length != dimension) return hits;
+
+        double norm = 0;
+        for (float v : query) {
+            norm += v * v;
+        }
+        if (norm == 0) return hits;
+        float scale = (float) (1 / Math.sqrt(norm));
+
+        // Top k kept sorted in two small arrays - k is tiny, insertion beats a heap
+        int[] best = new int[k];
+        float[] bestScores = new float[k];
+        Arrays.fill(bestScores, Float.NEGATIVE_INFINITY);
+        int found = 0;
+
+        for (int i = 0, base = 0; i < count; i++, base += dimension) {
+            float score = dot(vectors, base, query, dimension) * scale;
+            if (score < minScore || (found == k && score <= bestScores[k - 1])) continue;
+
+            int slot = Math.min(found, k - 1);
+            while (slot > 0 && bestScores[slot - 1] < score) {
+                best[slot] = best[slot - 1];
+                bestScores[slot] = bestScores[slot - 1];
+                slot--;
+            }
+            best[slot] = i;
+            bestScores[slot] = score;
+            if (found < k) found++;
+        }
+
+        for (int i = 0; i < found; i++) {
+            hits.add(new Hit(texts[best[i]], bestScores[i], createdAt[best[i]]));
+        }
+        searches++;
+        searchNanos += System.nanoTime() - start;
+        return hits;
+    }
+
+    /**
+     * Dot product of vectors[base, base + length) and query. Four independent sums
+     * let the JIT pipeline the multiply-adds instead of waiting on one long chain.
+     */
+    private static float dot(float[] vectors, int base, float[] query, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int d = 0;
+        for (; d + 3 < length; d += 4) {
+            s0 += vectors[base + d] * query[d];
+            s1 += vectors[base + d + 1] * query[d + 1];
+            s2 += vectors[base + d + 2] * query[d + 2];
+            s3 += vectors[base + d + 3] * query[d + 3];
+        }
+        for (; d < length; d++) {
+            s0 += vectors[base + d] * query[d];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Flush the mapped file and close it (the index stays usable in memory)
+     */
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            mapped.force();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close memory index " + vectorFile + ": " + e.getMessage());
+        }
+        channel = null;
+        mapped = null;
+    }
+
+    // ---- Storage ----
+
+    private void allocate(int capacity) {
+        vectors = new float[capacity * dimension];
+        createdAt = new long[capacity];
+        texts = new String[capacity];
+    }
+
+    private void grow() {
+        int capacity = texts.length * 2;
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+    }
+
+    private void persist(int index) throws IOException {
+        long offset = offsetOf(index);
+        if (offset + entryBytes() > mapped.capacity()) {
+            map(offsetOf(Math.max(texts.length, index + 1))); // Same capacity as the arrays
+        }
+
+        // Text, then vector, then the count that makes both visible
+        try (Writer writer = Files.newBufferedWriter(textFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(escape(texts[index]));
+            writer.write('\n');
+        }
+        mapped.putLong((int) offset, createdAt[index]);
+        int base = index * dimension;
+        for (int d = 0; d < dimension; d++) {
+            mapped.putFloat((int) (offset + 8 + d * 4L), vectors[base + d]);
+        }
+        mapped.putInt(8, index + 1);
+    }
+
+    private void rewriteTexts() throws IOException {
+        try (Writer writer = Files.newBufferedWriter(textFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(escape(texts[i]));
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * (Re)map the vector file with at least the given size; mapping past the
+     * end of the file grows it
+     */
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new IOException("Memory index too large");
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private long entryBytes() {
+        return 8 + dimension * 4L;
+    }
+
+    private long offsetOf(long index) {
+        return HEADER_BYTES + index * entryBytes();
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "");
+    }
+
+    private static String unescape(String line) {
+        StringBuilder text = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                text.append(next == 'n' ? '\n' : next);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    // Statistics getters
+    public int getDimension() { return dimension; }
+    public String getModel() { return model; }
+    public synchronized int size() { return count; }
+    public synchronized long getSearches() { return searches; }
+
+    /**
+     * Average search time in microseconds
+     */
+    public synchronized long getAverageSearchMicros() {
+        return searches == 0 ? 0 : searchNanos / searches / 1000;
+    }
+
+    /**
+     * Get simple debug info about the index
+     */
+    public synchronized String getDebugInfo() {
+        return String.format("%d memories x %d dims, %d searches (avg %d us)",
+            count, dimension, searches, getAverageSearchMicros());
+    }
+}
@@ -0,0 +1,74 @@
+package com.вувуеуdetective.game.ai;
+
+/**
+ * One generated mystery: the crime, who did it, and what every villager
+ * wants, claims and hides. Plain public fields so libGDX Json can read the
+ * model's answers and the disk cache straight into it.
+ */
+public class MysteryCase {
+
+    public String id;        // Also the cache file name
+    public String title;
+    public String crime;     // What happened, one or two sentences
+    public String victim;
+    public String location;
+    public String time;
+    public String culprit;   // Name of one of the suspects
+    public String solution;  // How the crime was done - for the reveal
+    public Suspect[] suspects;
+    public Clue[] clues;
+    public long createdAt;
+
+    public static class Suspect {
+        public String name;
+        public String role;
+        public String motive;
+        public String alibi;
+        public boolean alibiHolds; // False for the culprit, maybe for others too
+        public String secret;      // Something they hide that is not the crime (red herring)
+    }
+
+    public static class Clue {
+        public String description;
+        public String location;
+        public String pointsTo;    // Suspect name the clue incriminates
+    }
+
+    public Suspect getSuspect(String name) {
+        if (suspects == null) return null;
+        for (Suspect suspect : suspects) {
+            if (suspect.name != null && suspect.name.equalsIgnoreCase(name)) return suspect;
+        }
+        return null;
+    }
+
+    public boolean isCulprit(String name) {
+        return culprit != null && culprit.equalsIgnoreCase(name);
+    }
+
+    /**
+     * What an NPC knows about the case, for its persona in prompts.
+     * Null if the NPC is not part of this case.
+     */
+    public String describeFor(String npcName) {
+        Suspect suspect = getSuspect(npcName);
+        if (suspect == null) return null;
+        StringBuilder notes = new StringBuilder();
+        notes.append(String.format("The detective is investigating this: %s ", crime));
+        notes.append(String.format("You claim: %s ", suspect.alibi));
+        if (suspect.secret != null) {
+            notes.append(String.format("You are hiding that %s - don't admit it easily. ", suspect.secret));
+        }
+        if (isCulprit(npcName)) {
+            notes.append("You committed the crime. Never confess unless confronted with clear proof. ");
+        } else if (suspect.motive != null) {
+            notes.append(String.format("People might suspect you because %s ", suspect.motive));
+        }
+        return notes.toString().trim();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s (victim: %s, %s, %s)", title, crime, victim, location, time);
+    }
+}
@@ -0,0 +1,199 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversation state between the detective and one NPC.
+ * Keeps the "context" token array Ollama returns from /api/generate, so the next
+ * question only sends the new turn instead of the whole persona preamble again.
+ * The last few turns are also kept as text, to rebuild the conversation when the
+ * context has to be dropped for growing too large.
+ * Long conversations are compacted: older turns get condensed into a summary by a
+ * background model call, which keeps the prompt (and its latency) bounded.
+ */
+public class NpcConversation {
+
+    // Bounded-size policy
+    public static final int MAX_CONTEXT_TOKENS = 2048; // Drop context beyond this and re-prime from text
+    public static final int MAX_TURNS = 12;            // Text turns remembered
+    public static final int REPLAY_TURNS = 4;          // Turns replayed when re-priming
+
+    // Memory compaction policy
+    public static final int SUMMARY_THRESHOLD_TOKENS = 768; // Summarize once the conversation is this big
+    public static final int KEEP_RAW_TURNS = 2;             // Newest turns are never summarized
+    private static final int PERSONA_TOKENS = 60;           // Rough size of the persona preamble
+
+    private final String npcName;
+    private final String npcRole;
+
+    private int[] context = null; // null = next prompt must carry the persona again
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private long nextTurnIndex = 0;
+
+    // What the NPC remembers from turns that were compacted away
+    private String summary = null;
+    private boolean summarizing = false;
+    private int epoch = 0; // Moves when the context is replaced under requests in flight
+
+    // Statistics
+    private int lastPromptTokens = 0;
+    private int contextResets = 0;
+    private int summaries = 0;
+
+    public NpcConversation(String npcName, String npcRole) {
+        this.npcName = npcName;
+        this.npcRole = npcRole;
+    }
+
+    /**
+     * Context tokens to send with the next question, or null to start fresh
+     */
+    public synchronized int[] getContext() {
+        return context;
+    }
+
+    /**
+     * True if the detective hasn't asked this NPC anything yet
+     */
+    public synchronized boolean isEmpty() {
+        return turns.isEmpty() && context == null && summary == null;
+    }
+
+    /**
+     * Current epoch - capture it when building a request and pass it to recordTurn
+     */
+    public synchronized int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Remember a finished question/answer turn and the context Ollama returned for it.
+     * If a summary was applied since the request was built (the epoch moved), the
+     * returned context still holds the pre-summary conversation - the turn is kept
+     * as text but the context is not taken over.
+     */
+    public synchronized void recordTurn(String question, String answer, int[] newContext, int promptTokens,
+                                        int requestEpoch) {
+        turns.addLast(new Turn(nextTurnIndex++, question, answer));
+        while (turns.size() > MAX_TURNS) {
+            turns.removeFirst();
+        }
+
+        lastPromptTokens = promptTokens;
+        if (requestEpoch != epoch) {
+            return; // Compacted meanwhile - keep the summary's fresh start
+        }
+        if (newContext != null && newContext.length > MAX_CONTEXT_TOKENS) {
+            // Too long - next prompt re-primes with persona + recent turns instead
+            context = null;
+            contextResets++;
+        } else {
+            context = newContext;
+        }
+    }
+
+    /**
+     * Most recent turns as text (oldest first) for rebuilding a prompt without context
+     */
+    public synchronized List<Turn> getRecentTurns(int count) {
+        List<Turn> recent = new ArrayList<>(turns);
+        return recent.subList(Math.max(0, recent.size() - count), recent.size());
+    }
+
+    /**
+     * Estimated size of the conversation prompt in tokens.
+     * Exact when Ollama gave us a context, otherwise ~4 characters per token.
+     */
+    public synchronized int getTokenEstimate() {
+        if (context != null) {
+            return context.length;
+        }
+        int chars = summary == null ? 0 : summary.length();
+        for (Turn turn : turns) {
+            chars += turn.question.length() + turn.answer.length();
+        }
+        return PERSONA_TOKENS + chars / 4;
+    }
+
+    /**
+     * True if the conversation has grown past the threshold and no summary is running
+     */
+    public synchronized boolean needsSummary() {
+        return !summarizing && turns.size() > KEEP_RAW_TURNS && getTokenEstimate() > SUMMARY_THRESHOLD_TOKENS;
+    }
+
+    /**
+     * Mark a summary as running and return the turns it should condense
+     * (everything except the newest KEEP_RAW_TURNS)
+     */
+    public synchronized List<Turn> beginSummary() {
+        summarizing = true;
+        List<Turn> all = new ArrayList<>(turns);
+        return all.subList(0, Math.max(0, all.size() - KEEP_RAW_TURNS));
+    }
+
+    /**
+     * Replace the summarized turns with the new summary. The context is dropped so
+     * the next question is primed from persona + summary + the remaining turns.
+     */
+    public synchronized void applySummary(String newSummary, long lastSummarizedIndex) {
+        while (!turns.isEmpty() && turns.peekFirst().index <= lastSummarizedIndex) {
+            turns.removeFirst();
+        }
+        summary = newSummary;
+        context = null;
+        epoch++;
+        summarizing = false;
+        summaries++;
+    }
+
+    /**
+     * Summary failed - keep the raw turns and allow another attempt later
+     */
+    public synchronized void abortSummary() {
+        summarizing = false;
+    }
+
+    /**
+     * Summary of older turns, or null if nothing was compacted yet
+     */
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * Forget everything (new case, NPC reset...)
+     */
+    public synchronized void clear() {
+        turns.clear();
+        context = null;
+        summary = null;
+        epoch++;
+    }
+
+    // Getters
+    public String getNpcName() { return npcName; }
+    public String getNpcRole() { return npcRole; }
+    public synchronized int getTurnCount() { return turns.size(); }
+    public synchronized int getContextTokens() { return context == null ? 0 : context.length; }
+    public synchronized int getLastPromptTokens() { return lastPromptTokens; }
+    public synchronized int getContextResets() { return contextResets; }
+    public synchronized int getSummaryCount() { return summaries; }
+
+    /**
+     * One question and the NPC's answer
+     */
+    public static class Turn {
+        public final long index;
+        public final String question;
+        public final String answer;
+
+        public Turn(long index, String question, String answer) {
+            this.index = index;
+            this.question = question;
+            this.answer = answer;
+        }
+    }
+}
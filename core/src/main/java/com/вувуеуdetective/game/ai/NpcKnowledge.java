@@ -0,0 +1,120 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What each NPC has heard from other villagers (filled by GossipSimulator).
+ * Bounded per NPC - the oldest rumours are forgotten first - and read by
+ * OllamaClient when it builds an NPC's persona, so the detective can pick up
+ * gossip by asking around. Thread-safe.
+ */
+public class NpcKnowledge {
+
+    public static final int MAX_FACTS_PER_NPC = 8;
+    public static final int FACTS_IN_PROMPT = 3; // Newest ones - keeps prompts short
+
+    private final Map<String, ArrayDeque<Fact>> facts = new HashMap<>(); // Guarded by "this"
+
+    /**
+     * Something an NPC heard. hops = how many mouths it went through (1 = first hand)
+     */
+    public static class Fact {
+        public final String source;
+        public final String text;
+        public final int hops;
+        public final long heardAt;
+
+        public Fact(String source, String text, int hops) {
+            this.source = source;
+            this.text = text;
+            this.hops = hops;
+            this.heardAt = System.currentTimeMillis();
+        }
+    }
+
+    // Statistics
+    private int added = 0;
+    private int duplicates = 0;
+    private int forgotten = 0;
+
+    /**
+     * Remember something an NPC was told; returns false if they already knew it
+     */
+    public synchronized boolean add(String npcName, Fact fact) {
+        ArrayDeque<Fact> known = facts.computeIfAbsent(npcName, name -> new ArrayDeque<>());
+        for (Fact existing : known) {
+            if (existing.text.equalsIgnoreCase(fact.text)) {
+                duplicates++;
+                return false;
+            }
+        }
+        known.addLast(fact);
+        added++;
+        while (known.size() > MAX_FACTS_PER_NPC) {
+            known.removeFirst();
+            forgotten++;
+        }
+        return true;
+    }
+
+    /**
+     * Newest facts first, at most limit
+     */
+    public synchronized List<Fact> getFacts(String npcName, int limit) {
+        List<Fact> result = new ArrayList<>();
+        ArrayDeque<Fact> known = facts.get(npcName);
+        if (known == null) return result;
+        Iterator<Fact> it = known.descendingIterator();
+        while (it.hasNext() && result.size() < limit) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    public synchronized int getFactCount(String npcName) {
+        ArrayDeque<Fact> known = facts.get(npcName);
+        return known == null ? 0 : known.size();
+    }
+
+    /**
+     * Rumours for the NPC's persona, or null if they haven't heard anything
+     */
+    public String describeFor(String npcName) {
+        List<Fact> recent = getFacts(npcName, FACTS_IN_PROMPT);
+        if (recent.isEmpty()) return null;
+        StringBuilder notes = new StringBuilder("Gossip you heard around the village:");
+        for (Fact fact : recent) {
+            notes.append(" ").append(fact.source).append(" told you: \"").append(fact.text).append("\"");
+        }
+        return notes.toString();
+    }
+
+    /**
+     * Forget everything (new case)
+     */
+    public synchronized void clear() {
+        facts.clear();
+    }
+
+    // Statistics getters
+    public synchronized int getAdded() { return added; }
+    public synchronized int getDuplicates() { return duplicates; }
+    public synchronized int getForgotten() { return forgotten; }
+
+    /**
+     * Get simple debug info about NPC knowledge
+     */
+    public synchronized String getDebugInfo() {
+        StringBuilder info = new StringBuilder(String.format("knowledge: %d facts learned, %d duplicates, %d forgotten",
+            added, duplicates, forgotten));
+        for (Map.Entry<String, ArrayDeque<Fact>> entry : facts.entrySet()) {
+            info.append("; ").append(entry.getKey()).append(" knows ").append(entry.getValue().size());
+        }
+        return info.toString();
+    }
+}
@@ -0,0 +1,209 @@
+package com.вувуеуdetective.game.ai;
+
+import com.вувуеуdetective.game.ai.RequestScheduler.Priority;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-term memory of every NPC: each answer the model gave the detective is embedded
+ * (/api/embeddings) and stored in the NPC's MemoryIndex; before the NPC answers,
+ * the memories closest to the new question are recalled for the prompt.
+ * Indexes live in directory/<case>/<npc>.<model>.vec + .txt and survive restarts.
+ * Each case has its own memories - answers about another crime, with another
+ * culprit and other alibis, would only mislead the NPC. Vectors of different
+ * embedding models don't compare, so each model has its own index too, and a
+ * switch of model simply starts a new one, leaving the old one on disk.
+ */
+public class NpcMemory {
+
+    public static final int DEFAULT_RECALL = 3;
+    // Memories from before the first case
+    public static final String NO_CASE = "village";
+    // Below this cosine similarity a memory is about something else entirely
+    private static final float MIN_SCORE = 0.35f;
+
+    private final OllamaClient ollamaClient;
+    private final Path directory; // null = memory only
+    private final Map<String, MemoryIndex> indexes = new HashMap<>(); // By file name; guarded by itself
+    private volatile String scope = NO_CASE; // The case memories belong to
+
+    // Statistics
+    private final AtomicLong remembered = new AtomicLong();
+    private final AtomicLong recalls = new AtomicLong();
+    private final AtomicLong recalledMemories = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public NpcMemory(OllamaClient ollamaClient, Path directory) {
+        this.ollamaClient = ollamaClient;
+        this.directory = directory;
+    }
+
+    /**
+     * Switch to the memories of another case (e.g. MysteryCase.id). The indexes
+     * of the previous case are closed; their files stay for when it comes back.
+     */
+    public void setCase(String caseId) {
+        String next = caseId == null ? NO_CASE : caseId;
+        if (next.equals(scope)) return;
+        scope = next;
+        synchronized (indexes) {
+            for (MemoryIndex index : indexes.values()) {
+                index.close();
+            }
+            indexes.clear();
+        }
+    }
+
+    /**
+     * Store an exchange in the NPC's memory (embedded at BACKGROUND priority).
+     * It belongs to the case current now, even if another begins before the embedding is back.
+     */
+    public CompletableFuture<Void> remember(String npcName, String text) {
+        String caseScope = scope;
+        String model = ollamaClient.getEmbeddingModel();
+        return ollamaClient.embed(model, text, Priority.BACKGROUND).handle((vector, error) -> {
+            if (error != null) {
+                failures.incrementAndGet();
+                return null;
+            }
+            MemoryIndex index = indexFor(caseScope, npcName, model, vector.length, true);
+            if (index == null) {
+                failures.incrementAndGet();
+                return null;
+            }
+            index.add(vector, text);
+            remembered.incrementAndGet();
+            return null;
+        });
+    }
+
+    /**
+     * Store the NPC's answer to a question of the detective
+     */
+    public CompletableFuture<Void> rememberAnswer(String npcName, String question, String answer) {
+        return remember(npcName, "The detective asked you: \"" + question + "\" You answered: \"" + answer + "\"");
+    }
+
+    /**
+     * The NPC's memories most relevant to a query, best first. The query is
+     * embedded at PLAYER priority - the detective is waiting for the answer.
+     * Completes with an empty list on failure.
+     */
+    public CompletableFuture<List<String>> recall(String npcName, String query, int k) {
+        String caseScope = scope;
+        String model = ollamaClient.getEmbeddingModel();
+        if (!hasMemories(caseScope, npcName, model)) {
+            return CompletableFuture.completedFuture(new ArrayList<>()); // Don't pay for an embedding
+        }
+        recalls.incrementAndGet();
+        CompletableFuture<float[]> embedding = ollamaClient.embed(model, query, Priority.PLAYER);
+        CompletableFuture<List<String>> result = embedding.handle((vector, error) -> {
+            List<String> texts = new ArrayList<>();
+            if (error != null) {
+                failures.incrementAndGet();
+                return texts;
+            }
+            MemoryIndex index = indexFor(caseScope, npcName, model, vector.length, false);
+            if (index == null) return texts; // Nothing stored for this model and size - skip, never reopen
+            for (MemoryIndex.Hit hit : index.search(vector, k, MIN_SCORE)) {
+                texts.add(hit.text);
+            }
+            recalledMemories.addAndGet(texts.size());
+            return texts;
+        });
+        result.whenComplete((texts, error) -> {
+            if (result.isCancelled()) embedding.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * False if there is certainly nothing to recall for the NPC in this case under this model
+     */
+    private boolean hasMemories(String caseScope, String npcName, String model) {
+        String file = fileName(caseScope, npcName, model);
+        synchronized (indexes) {
+            MemoryIndex index = indexes.get(file);
+            if (index != null) return index.size() > 0;
+        }
+        return directory != null && Files.exists(directory.resolve(file + ".vec"));
+    }
+
+    /**
+     * Path of an index below the directory, without extension: <case>/<npc>.<model>
+     */
+    private static String fileName(String caseScope, String npcName, String model) {
+        return safe(caseScope) + "/" + safe(npcName) + "." + safe(model);
+    }
+
+    private static String safe(String name) {
+        return name.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    /**
+     * The NPC's index for a case and model, opened on first use. Created only if create is
+     * set (memory only if its files can't be opened); null if there is none, or
+     * if it holds vectors of another size - those are left alone, not replaced.
+     */
+    private MemoryIndex indexFor(String caseScope, String npcName, String model, int dimension, boolean create) {
+        String file = fileName(caseScope, npcName, model);
+        synchronized (indexes) {
+            MemoryIndex index = indexes.get(file);
+            if (index == null) {
+                if (!create && (directory == null || !Files.exists(directory.resolve(file + ".vec")))) return null;
+                if (directory == null) {
+                    index = new MemoryIndex(dimension);
+                } else {
+                    try {
+                        index = MemoryIndex.open(directory.resolve(file + ".vec"), directory.resolve(file + ".txt"),
+                            model, dimension);
+                    } catch (IOException e) {
+                        System.err.println("Could not open memory of " + npcName + ": " + e.getMessage());
+                        index = new MemoryIndex(dimension); // Still remember this session
+                    }
+                }
+                indexes.put(file, index);
+            }
+            return index.getDimension() == dimension ? index : null;
+        }
+    }
+
+    /**
+     * Flush and close the memory files
+     */
+    public void close() {
+        synchronized (indexes) {
+            for (MemoryIndex index : indexes.values()) {
+                index.close();
+            }
+        }
+    }
+
+    // Statistics getters
+    public long getRemembered() { return remembered.get(); }
+    public long getRecalls() { return recalls.get(); }
+    public long getRecalledMemories() { return recalledMemories.get(); }
+    public long getFailures() { return failures.get(); }
+
+    /**
+     * Get simple debug info about NPC memory
+     */
+    public String getDebugInfo() {
+        StringBuilder info = new StringBuilder(String.format("memory: %d remembered, %d recalls (%d memories used), %d failures",
+            getRemembered(), getRecalls(), getRecalledMemories(), getFailures()));
+        synchronized (indexes) {
+            for (Map.Entry<String, MemoryIndex> entry : indexes.entrySet()) {
+                info.append("; ").append(entry.getKey()).append(' ').append(entry.getValue().getDebugInfo());
+            }
+        }
+        return info.toString();
+    }
+}
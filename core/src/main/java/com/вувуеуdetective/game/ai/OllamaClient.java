@@ -2,8 +2,32 @@ package com.вувуеуdetective.game.ai;
 
 import com.badlogic.gdx.Net;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.net.HttpStatus;
+import com.badlogic.gdx.net.NetJavaImpl;
 import com.badlogic.gdx.utils.Json;
-import com.badlogic.gdx.utils.JsonValue;
+import com.вувуеуdetective.game.ai.OllamaRouter.Task;
+import com.вувуеуdetective.game.ai.RequestScheduler.Priority;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Simple HTTP client for Ollama API
@@ -11,62 +35,773 @@ import com.badlogic.gdx.utils.JsonValue;
  */
 public class OllamaClient {
     
-    private static final String OLLAMA_URL = "http://localhost:11434/api/generate";
-    private static final String MODEL_NAME = "qwen2.5:0.5b";
+    // Keep the model loaded between requests (Ollama unloads it after 5 minutes by default)
+    private static final String KEEP_ALIVE = "30m";
     
-    private Json json;
+    // HTTP worker threads per request in flight: room for its hedge, embeddings and health checks
+    private static final int WORKER_THREADS_PER_REQUEST = 2;
+    private static final int MIN_WORKER_THREADS = 4;
+    private static final int REQUEST_TIMEOUT_MS = 60000;
+    private static final int HEALTH_TIMEOUT_MS = 2000;
+
+    // Reflective Json for the rare /api/tags call (generate traffic goes through OllamaCodec).
+    // It caches reflection data internally and is not thread-safe, so each worker gets its own
+    private static final ThreadLocal<Json> json = ThreadLocal.withInitial(OllamaClient::createJson);
+
+    // Cached answers: greetings keep several variants so they don't repeat word for word
+    private static final long GREETING_TTL_MS = 30 * 60 * 1000;
+    private static final int GREETING_VARIANTS = 3;
+    private static final long QUESTION_TTL_MS = 10 * 60 * 1000;
+    private static final int MEMORY_CACHE_ENTRIES = 256;
+
+    // Hedging: ask a second server if the first is slower than its usual p95
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final int MIN_HEDGE_SAMPLES = 20; // Don't guess a delay from too few samples
+    private static final long MIN_HEDGE_DELAY_MS = 250;
+
+    // Conversation sessions kept at once (least recently used NPC is forgotten first)
+    private static final int MAX_CONVERSATIONS = 16;
+    // How long a question waits for recalled memories before it is asked without them
+    private static final long MEMORY_RECALL_BUDGET_MS = 400;
+
+    // Dedicated HTTP pool - a slow model never starves other Gdx.net users
+    private final NetJavaImpl net;
+    private final ResponseCache cache;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final RequestScheduler scheduler;
+
+    // Latency statistics - time to first token (streaming) and to the whole answer
+    private final LatencyTracker firstTokenLatency = new LatencyTracker(200);
+    private final LatencyTracker totalLatency = new LatencyTracker(200);
+    private final AtomicLong deadlineMisses = new AtomicLong();
+    private final AtomicLong lateAnswers = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    // Which model and server each request goes to (each server has its own circuit breaker)
+    private final OllamaRouter router;
+    // Output length and context size per task, adapted to measured latency
+    private final GenerationPolicy generationPolicy = new GenerationPolicy();
+    private volatile boolean hedging = true; // Only has an effect with two or more servers
+
+    // What each NPC knows about the current case (null = no case, generic villagers)
+    private volatile Function<String, String> caseNotes = null;
+    // What NPCs heard from each other (null = no gossip)
+    private volatile NpcKnowledge knowledge = null;
+    // Long-term memory of past exchanges (null = only the current conversation)
+    private volatile NpcMemory memory = null;
+
+    // Warm-up: -1 until the model has been loaded
+    private volatile long warmUpMillis = -1;
+
+    // Per-NPC conversation sessions, access-ordered for LRU eviction; guarded by itself
+    private final Map<String, NpcConversation> conversations =
+        new LinkedHashMap<String, NpcConversation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NpcConversation> eldest) {
+                return size() > MAX_CONVERSATIONS;
+            }
+        };
     
     public OllamaClient() {
-        json = new Json();
+        this(new ResponseCache(MEMORY_CACHE_ENTRIES, QUESTION_TTL_MS, 1));
+    }
+
+    /**
+     * Use the given cache (e.g. one with a disk tier) for greetings and questions
+     */
+    public OllamaClient(ResponseCache cache) {
+        this(cache, OllamaRouter.fromEnvironment());
+    }
+
+    /**
+     * Use the given cache and server pool / model policy, with as many requests
+     * in flight as the pool has slots
+     */
+    public OllamaClient(ResponseCache cache, OllamaRouter router) {
+        this(cache, router, router.getCapacity());
+    }
+
+    /**
+     * Use the given cache and server pool / model policy, with at most maxInFlight
+     * requests running at once (one of them reserved for the player)
+     */
+    public OllamaClient(ResponseCache cache, OllamaRouter router, int maxInFlight) {
+        scheduler = new RequestScheduler(maxInFlight);
+        net = new NetJavaImpl(Math.max(MIN_WORKER_THREADS, scheduler.getMaxInFlight() * WORKER_THREADS_PER_REQUEST));
+        this.cache = cache;
+        this.router = router;
+    }
+
+    private static Json createJson() {
+        Json json = new Json();
+        json.setIgnoreUnknownFields(true); // Responses carry many fields we don't use
+        return json;
     }
     
     /**
      * Send a prompt to Ollama and get AI response
-     * This is synchronous - will block until response received
+     * This is synchronous - will block until response received.
+     * Never call this from the render thread, use askAsync instead.
      */
     public String ask(String prompt) {
-        try {
-            return sendRequest(prompt);
-        } catch (Exception e) {
-            System.err.println("Ollama request failed: " + e.getMessage());
+        return askAsync(prompt).join();
+    }
+
+    /**
+     * Send a prompt to Ollama without blocking the caller.
+     * The future always completes with text - a fallback line if the request failed.
+     * Cancelling the returned future aborts the HTTP request.
+     */
+    public CompletableFuture<String> askAsync(String prompt) {
+        return askAsync(prompt, Priority.PLAYER);
+    }
+
+    /**
+     * askAsync for work that isn't the player's current dialogue turn
+     */
+    public CompletableFuture<String> askAsync(String prompt, Priority priority) {
+        Task task = priority == Priority.BACKGROUND ? Task.BACKGROUND : Task.GENERAL;
+        return withFallback(textOf(sendShared(newRequest(prompt, false, task), null, priority)));
+    }
+
+    /**
+     * Streaming version of askAsync - Ollama sends the answer as NDJSON chunks and
+     * onToken receives each piece as soon as it arrives (on a worker thread, wrap it
+     * with onGameThread to touch game state). The future completes with the full text.
+     * Cancelling the future closes the HTTP stream mid-answer.
+     */
+    public CompletableFuture<String> askStreaming(String prompt, Consumer<String> onToken) {
+        return withFallback(textOf(sendShared(newRequest(prompt, true, Task.GENERAL), onToken, Priority.PLAYER)));
+    }
+
+    /**
+     * askAsync with a latency budget. If the model hasn't answered within budgetMs
+     * the future completes with a fallback line; the real answer, if it still
+     * arrives, goes to onLateAnswer (on a worker thread).
+     */
+    public CompletableFuture<String> askWithin(String prompt, long budgetMs, Consumer<String> onLateAnswer) {
+        return withDeadline(askAsync(prompt), budgetMs, null, onLateAnswer);
+    }
+
+    /**
+     * Complete with a stand-in line once the budget runs out, hand a late real answer to onLateAnswer.
+     * Cancelling the returned future before the deadline cancels the request.
+     */
+    private CompletableFuture<String> withDeadline(CompletableFuture<String> request, long budgetMs,
+                                                   String standInKey, Consumer<String> onLateAnswer) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        forwardCancel(result, request);
+        watchDeadline(request, new AtomicBoolean(false), budgetMs, standInKey, result::complete);
+        request.whenComplete((text, error) -> {
+            if (error == null && !result.complete(text) && !result.isCancelled() && onLateAnswer != null) {
+                onLateAnswer.accept(text);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * After budgetMs, call onStandIn with a stand-in line unless the request is
+     * done or has started answering. A previous answer for the same prompt (from
+     * the cache) is used if there is one, otherwise a generic fallback line.
+     */
+    private void watchDeadline(CompletableFuture<String> request, AtomicBoolean answering, long budgetMs,
+                               String standInKey, Consumer<String> onStandIn) {
+        AtomicBoolean missed = new AtomicBoolean(false);
+        CompletableFuture.delayedExecutor(budgetMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (request.isDone() || answering.get()) return;
+            missed.set(true);
+            deadlineMisses.incrementAndGet();
+            String standIn = standInKey == null ? null : cache.peekAny(standInKey);
+            onStandIn.accept(standIn != null ? standIn : getFallbackResponse());
+        });
+        request.whenComplete((text, error) -> {
+            if (error == null && missed.get()) lateAnswers.incrementAndGet();
+        });
+    }
+
+    /**
+     * Ask for a JSON answer (Ollama's format mode) at BACKGROUND priority, for
+     * generated game content, with STRUCTURED limits that leave room for a whole
+     * answer. No cache and no fallback - the caller parses and checks the text
+     * and decides whether to retry.
+     */
+    public CompletableFuture<String> generateJson(String prompt) {
+        OllamaRequest request = newRequest(prompt, false, Task.STRUCTURED);
+        request.format = "json";
+        return textOf(sendShared(request, null, Priority.BACKGROUND));
+    }
+
+    /**
+     * Embedding vector of a text (/api/embeddings), for NPC memory. Queued in the
+     * scheduler like generate traffic; no cache and no fallback.
+     */
+    public CompletableFuture<float[]> embed(String text, Priority priority) {
+        return embed(getEmbeddingModel(), text, priority);
+    }
+
+    /**
+     * Embedding vector of a text from a given model - for callers that must know
+     * which model made the vector (vectors of different models don't compare)
+     */
+    public CompletableFuture<float[]> embed(String model, String text, Priority priority) {
+        return scheduler.submit(null, priority, () -> sendEmbedding(model, text, router.pick(model, null)));
+    }
+
+    /**
+     * Model embed() currently uses
+     */
+    public String getEmbeddingModel() {
+        return router.modelFor(Task.EMBEDDING);
+    }
+
+    private CompletableFuture<float[]> sendEmbedding(String model, String text, OllamaEndpoint endpoint) {
+        if (endpoint == null) {
+            return CompletableFuture.failedFuture(new IOException("No Ollama server available for " + model));
+        }
+        StringBuilder body = new StringBuilder(text.length() + 80);
+        body.append("{\"model\":");
+        OllamaCodec.appendString(body, model);
+        body.append(",\"prompt\":");
+        OllamaCodec.appendString(body, text);
+        body.append(",\"keep_alive\":");
+        OllamaCodec.appendString(body, KEEP_ALIVE);
+        body.append('}');
+
+        Net.HttpRequest httpRequest = new Net.HttpRequest(Net.HttpMethods.POST);
+        httpRequest.setUrl(endpoint.getEmbeddingsUrl());
+        httpRequest.setHeader("Content-Type", "application/json");
+        httpRequest.setContent(body.toString());
+        httpRequest.setTimeOut(REQUEST_TIMEOUT_MS);
+
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        endpoint.begin();
+        net.sendHttpRequest(httpRequest, new Net.HttpResponseListener() {
+            @Override
+            public void handleHttpResponse(Net.HttpResponse httpResponse) {
+                int status = httpResponse.getStatus().getStatusCode();
+                String result = httpResponse.getResultAsString();
+                if (status != HttpStatus.SC_OK) {
+                    future.completeExceptionally(new IllegalStateException("HTTP " + status + ": " + result));
+                    return;
+                }
+                try {
+                    EmbeddingResponse response = json.get().fromJson(EmbeddingResponse.class, result);
+                    if (response.error != null) throw new IllegalStateException("Ollama error: " + response.error);
+                    if (response.embedding == null || response.embedding.length == 0) {
+                        throw new IOException("Empty embedding from Ollama");
+                    }
+                    future.complete(response.embedding);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+
+        future.whenComplete((vector, error) -> {
+            if (future.isCancelled()) {
+                abortInBackground(httpRequest, null);
+            }
+            endpoint.end(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error == null, future.isCancelled());
+            recordOutcome(endpoint.getBreaker(), future, error);
+        });
+        return future;
+    }
+
+    /**
+     * Replace failures with a fallback line, keeping cancellation wired to the request
+     */
+    private CompletableFuture<String> withFallback(CompletableFuture<String> request) {
+        CompletableFuture<String> result = request.exceptionally(e -> {
+            System.err.println("Ollama request failed: " + describe(e));
             return getFallbackResponse();
+        });
+
+        // exceptionally() returns a new future, so forward cancellation upstream by hand
+        forwardCancel(result, request);
+        return result;
+    }
+
+    /**
+     * Answer from the response cache if possible, otherwise ask the model and
+     * remember the answer. Cache hits are handed to onToken in one piece.
+     * Failures are passed through - wrap with withFallback for player-facing text.
+     */
+    private CompletableFuture<String> askCached(String prompt, Task task, long ttlMillis, int variants,
+                                                boolean stream, Consumer<String> onToken, Priority priority) {
+        return askCached(prompt, task, ttlMillis, variants, stream, onToken, priority, null);
+    }
+
+    /**
+     * askCached that also hands a successful answer to onAnswer before completing:
+     * the model's whole response (with its context tokens) and true, or for a
+     * cache hit a response holding just the text and false
+     */
+    private CompletableFuture<String> askCached(String prompt, Task task, long ttlMillis, int variants,
+                                                boolean stream, Consumer<String> onToken, Priority priority,
+                                                BiConsumer<OllamaResponse, Boolean> onAnswer) {
+        OllamaRequest ollamaRequest = newRequest(prompt, stream, task);
+        String key = ResponseCache.key(ollamaRequest.model, prompt);
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        cache.getAsync(key).whenComplete((cached, lookupError) -> {
+            if (result.isDone()) return; // Cancelled while the disk tier was read
+
+            if (cached != null) {
+                if (onToken != null) onToken.accept(cached);
+                if (onAnswer != null) {
+                    OllamaResponse hit = new OllamaResponse();
+                    hit.response = cached;
+                    onAnswer.accept(hit, false);
+                }
+                result.complete(cached);
+                return;
+            }
+
+            CompletableFuture<OllamaResponse> request = sendShared(ollamaRequest, onToken, priority);
+            forwardCancel(result, request);
+            request.whenComplete((response, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    cache.put(key, response.response, ttlMillis, variants);
+                    if (onAnswer != null) onAnswer.accept(response, true);
+                    result.complete(response.response);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Just the text of a response, keeping cancellation wired to the request
+     */
+    private static CompletableFuture<String> textOf(CompletableFuture<OllamaResponse> request) {
+        CompletableFuture<String> text = request.thenApply(response -> response.response);
+        forwardCancel(text, request);
+        return text;
+    }
+
+    /**
+     * Cancel upstream when downstream is cancelled (derived futures don't do this on their own)
+     */
+    private static void forwardCancel(CompletableFuture<?> downstream, CompletableFuture<?> upstream) {
+        downstream.whenComplete((value, error) -> {
+            if (downstream.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * Callback flavour of askAsync - the callback runs on the libGDX game thread
+     */
+    public CompletableFuture<String> askAsync(String prompt, Consumer<String> onGameThread) {
+        return deliverOnGameThread(askAsync(prompt), onGameThread);
+    }
+
+    /**
+     * Send a request unless the same prompt is already in flight, in which case
+     * this caller shares that request's answer (and its streamed tokens).
+     * New requests wait in the scheduler for a free slot.
+     */
+    private CompletableFuture<OllamaResponse> sendShared(OllamaRequest request, Consumer<String> onToken,
+                                                         Priority priority) {
+        String key = ResponseCache.key(request.model, request.prompt);
+        if (request.context != null) {
+            // Same words on top of a different conversation are a different request
+            key += "|ctx" + request.context.length + ":" + Arrays.hashCode(request.context);
         }
+        String flightKey = key;
+        CompletableFuture<OllamaResponse> response = singleFlight.join(flightKey, onToken,
+            fanOut -> scheduler.submit(flightKey, priority, () -> sendHedged(request, fanOut, priority)));
+
+        // Joined a queued prefetch/background request? It now has to be as fast as we need
+        scheduler.promote(flightKey, priority);
+        return response;
     }
     
     /**
-     * Send HTTP request to Ollama API
+     * Build request body
      */
-    private String sendRequest(String prompt) throws Exception {
-        // Build request body
+    private OllamaRequest newRequest(String prompt, boolean stream, Task task) {
         OllamaRequest request = new OllamaRequest();
-        request.model = MODEL_NAME;
+        request.model = router.modelFor(task);
         request.prompt = prompt;
-        request.stream = false; // We want complete response, not streaming
-        
-        String requestBody = json.toJson(request);
+        request.stream = stream; // Streaming sends one JSON object per line as tokens are generated
+        request.keep_alive = KEEP_ALIVE;
+        request.task = task;
+        request.options = generationPolicy.optionsFor(task, request.model);
+        return request;
+    }
+
+    /**
+     * Send a request to the cheapest server for its model. With two or more servers,
+     * player requests are raced: if the first server is slower than usual (past the
+     * p95 of recent requests) or fails, the request also goes to another server.
+     * Whichever attempt produces output first wins; the other one is cancelled.
+     */
+    private CompletableFuture<OllamaResponse> sendHedged(OllamaRequest request, Consumer<String> onToken,
+                                                         Priority priority) {
+        if (!hedging || priority != Priority.PLAYER || router.getEndpoints().size() < 2) {
+            return sendTimed(request, onToken, router.pick(request.model, null));
+        }
+        LatencyTracker tracker = request.stream ? firstTokenLatency : totalLatency;
+        long hedgeDelay = tracker.getSampleCount() < MIN_HEDGE_SAMPLES
+            ? -1 // No reliable p95 yet - only fail over
+            : Math.max(MIN_HEDGE_DELAY_MS, tracker.percentile(HEDGE_PERCENTILE));
+        return new HedgedCall(request, onToken).start(hedgeDelay);
+    }
+
+    /**
+     * One request raced across two servers. Attempt 0 = first choice, 1 = hedge.
+     */
+    private class HedgedCall {
+        final OllamaRequest request;
+        final Consumer<String> onToken;
+        final CompletableFuture<OllamaResponse> result = new CompletableFuture<>();
+        final AtomicInteger winner = new AtomicInteger(-1); // First attempt to produce output
+        final AtomicBoolean hedgeStarted = new AtomicBoolean(false);
+        final AtomicReference<OllamaEndpoint> firstChoice = new AtomicReference<>();
+        final AtomicReference<CompletableFuture<OllamaResponse>> primary = new AtomicReference<>();
+        final AtomicReference<CompletableFuture<OllamaResponse>> secondary = new AtomicReference<>();
+
+        HedgedCall(OllamaRequest request, Consumer<String> onToken) {
+            this.request = request;
+            this.onToken = onToken;
+        }
+
+        CompletableFuture<OllamaResponse> start(long hedgeDelay) {
+            // Whatever happens to the result, stop the attempts that didn't win
+            result.whenComplete((response, error) -> {
+                cancelUnless(primary.get(), 0);
+                cancelUnless(secondary.get(), 1);
+            });
+
+            OllamaEndpoint endpoint = router.pick(request.model, null);
+            firstChoice.set(endpoint);
+            primary.set(attempt(0, endpoint));
+            if (hedgeDelay >= 0) {
+                CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(this::startHedge);
+            }
+            return result;
+        }
+
+        /**
+         * Returns false if no other server could take the request
+         */
+        boolean startHedge() {
+            if (result.isDone() || winner.get() != -1 || !hedgeStarted.compareAndSet(false, true)) return true;
+            OllamaEndpoint endpoint = router.pick(request.model, firstChoice.get());
+            if (endpoint == null) return false;
+            hedgesSent.incrementAndGet();
+            secondary.set(attempt(1, endpoint));
+            if (result.isDone()) secondary.get().cancel(true);
+            return true;
+        }
+
+        CompletableFuture<OllamaResponse> attempt(int id, OllamaEndpoint endpoint) {
+            // Streaming: the first attempt to send a token owns the output from then on
+            Consumer<String> claimTokens = token -> {
+                if (winner.compareAndSet(-1, id) || winner.get() == id) onToken.accept(token);
+            };
+            CompletableFuture<OllamaResponse> future = sendTimed(request, claimTokens, endpoint);
+            future.whenComplete((response, error) -> settle(id, response, error));
+            return future;
+        }
+
+        void settle(int id, OllamaResponse response, Throwable error) {
+            if (error == null) {
+                if (winner.compareAndSet(-1, id) || winner.get() == id) {
+                    if (id == 1) hedgeWins.incrementAndGet();
+                    result.complete(response);
+                }
+                return;
+            }
+            if (winner.get() == id) {
+                result.completeExceptionally(error); // Winner broke mid-stream
+            } else if (id == 0 && !hedgeStarted.get()) {
+                // First choice failed fast - fail over right away
+                if (!startHedge()) result.completeExceptionally(error);
+            } else {
+                CompletableFuture<OllamaResponse> other = (id == 0) ? secondary.get() : primary.get();
+                if (other == null || other.isDone()) {
+                    result.completeExceptionally(error); // Both attempts failed
+                }
+            }
+        }
+
+        void cancelUnless(CompletableFuture<OllamaResponse> attempt, int id) {
+            if (attempt != null && winner.get() != id) attempt.cancel(true);
+        }
+    }
+
+    /**
+     * sendRequest plus latency, load and circuit breaker bookkeeping.
+     * The endpoint comes from router.pick (null = no server available).
+     */
+    private CompletableFuture<OllamaResponse> sendTimed(OllamaRequest request, Consumer<String> onToken,
+                                                        OllamaEndpoint endpoint) {
+        if (endpoint == null) {
+            return CompletableFuture.failedFuture(new IOException("No Ollama server available for " + request.model));
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(false);
+        Consumer<String> timedTokens = token -> {
+            if (firstToken.compareAndSet(false, true)) {
+                firstTokenLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            onToken.accept(token);
+        };
+
+        endpoint.begin();
+        CompletableFuture<OllamaResponse> future = sendRequest(request, timedTokens, endpoint.getGenerateUrl());
+        future.whenComplete((response, error) -> {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (error == null) {
+                totalLatency.record(millis);
+                if (request.task != null) generationPolicy.record(request.task, request.model, request.options, millis, response);
+            }
+            endpoint.end(millis, error == null, future.isCancelled());
+            recordOutcome(endpoint.getBreaker(), future, error);
+        });
+        return future;
+    }
+
+    private static void recordOutcome(CircuitBreaker breaker, CompletableFuture<?> future, Throwable error) {
+        if (error == null) {
+            breaker.recordSuccess();
+        } else if (future.isCancelled()) {
+            breaker.releaseTrial(); // Says nothing about the server
+        } else {
+            breaker.recordFailure();
+        }
+    }
+
+    /**
+     * Send HTTP request to Ollama API
+     */
+    private CompletableFuture<OllamaResponse> sendRequest(OllamaRequest request, Consumer<String> onToken, String url) {
+        String requestBody = OllamaCodec.encode(request);
         
         // Create HTTP request
         Net.HttpRequest httpRequest = new Net.HttpRequest(Net.HttpMethods.POST);
-        httpRequest.setUrl(OLLAMA_URL);
+        httpRequest.setUrl(url);
         httpRequest.setHeader("Content-Type", "application/json");
         httpRequest.setContent(requestBody);
+        httpRequest.setTimeOut(REQUEST_TIMEOUT_MS);
         
-        // This is a simplified synchronous approach
-        // In real game, you might want to use async callbacks
-        return sendSynchronousRequest(httpRequest);
+        // JSON is never trimmed to a sentence end - that would only break it further
+        int cutOff = request.options != null && request.format == null ? request.options.num_predict : 0;
+        return request.stream ? sendStreamingRequest(httpRequest, onToken, cutOff) : sendAsyncRequest(httpRequest, cutOff);
     }
     
     /**
-     * Simplified synchronous HTTP request
-     * Note: This blocks the game thread! In production, use async.
+     * Run the HTTP request on the worker pool and complete a future with the model's answer
      */
-    private String sendSynchronousRequest(Net.HttpRequest httpRequest) throws Exception {
-        // For now, we'll use a simple approach
-        // TODO: Implement proper async HTTP handling
+    private CompletableFuture<OllamaResponse> sendAsyncRequest(Net.HttpRequest httpRequest, int cutOff) {
+        CompletableFuture<OllamaResponse> future = new CompletableFuture<>();
         
-        // Placeholder - we'll implement this properly next
-        // For now, return a test response
-        return "Hello, detective! I'm ready to help with your investigation.";
+        net.sendHttpRequest(httpRequest, new Net.HttpResponseListener() {
+            @Override
+            public void handleHttpResponse(Net.HttpResponse httpResponse) {
+                int status = httpResponse.getStatus().getStatusCode();
+                if (status != HttpStatus.SC_OK) {
+                    future.completeExceptionally(new IllegalStateException("HTTP " + status + ": " + httpResponse.getResultAsString()));
+                    return;
+                }
+                OllamaCodec codec = new OllamaCodec();
+                try (InputStream in = httpResponse.getResultAsStream()) {
+                    if (!codec.readObject(in)) {
+                        throw new IOException("Empty response from Ollama");
+                    }
+                    checkError(codec);
+                    OllamaResponse response = codec.toResponse();
+                    response.response = endAtSentence(response.response.trim(), response, cutOff);
+                    future.complete(response);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+
+        // Caller gave up (dialogue closed) - stop waiting on the socket
+        future.whenComplete((text, error) -> {
+            if (future.isCancelled()) {
+                abortInBackground(httpRequest, null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Run a streaming HTTP request, reading NDJSON chunks until Ollama reports done
+     */
+    private CompletableFuture<OllamaResponse> sendStreamingRequest(Net.HttpRequest httpRequest, Consumer<String> onToken,
+                                                                   int cutOff) {
+        CompletableFuture<OllamaResponse> future = new CompletableFuture<>();
+        AtomicReference<InputStream> openStream = new AtomicReference<>();
+
+        net.sendHttpRequest(httpRequest, new Net.HttpResponseListener() {
+            @Override
+            public void handleHttpResponse(Net.HttpResponse httpResponse) {
+                int status = httpResponse.getStatus().getStatusCode();
+                if (status != HttpStatus.SC_OK) {
+                    future.completeExceptionally(new IllegalStateException("HTTP " + status + ": " + httpResponse.getResultAsString()));
+                    return;
+                }
+
+                InputStream in = httpResponse.getResultAsStream();
+                openStream.set(in);
+                StringBuilder fullText = new StringBuilder();
+                OllamaResponse last = null;
+                // Chunks are decoded in place - the only garbage per token is the token string itself
+                OllamaCodec codec = new OllamaCodec();
+                try (InputStream stream = in) {
+                    while (!future.isDone() && codec.readObject(stream)) {
+                        checkError(codec);
+                        CharSequence token = codec.getResponse();
+                        if (token.length() > 0) {
+                            String text = token.toString();
+                            fullText.append(text);
+                            onToken.accept(text);
+                        }
+                        if (codec.isDone()) { // Last chunk carries context and stats
+                            last = codec.toResponse();
+                            break;
+                        }
+                    }
+                    OllamaResponse result = streamResult(last, fullText);
+                    result.response = endAtSentence(result.response, result, cutOff);
+                    future.complete(result);
+                } catch (Exception e) {
+                    // Connection dropped mid-answer - keep whatever the player already saw
+                    if (fullText.length() > 0) {
+                        future.complete(streamResult(null, fullText));
+                    } else {
+                        future.completeExceptionally(e);
+                    }
+                }
+            }
+
+            @Override
+            public void failed(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+
+        // Closing the stream unblocks the worker sitting in read()
+        future.whenComplete((text, error) -> {
+            if (future.isCancelled()) {
+                abortInBackground(httpRequest, openStream.get());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Whole answer of a stream: stats/context from the final chunk, text from all chunks
+     */
+    private static OllamaResponse streamResult(OllamaResponse finalChunk, StringBuilder fullText) {
+        OllamaResponse result = (finalChunk != null && finalChunk.done) ? finalChunk : new OllamaResponse();
+        result.response = fullText.toString().trim();
+        return result;
+    }
+
+    /**
+     * An answer cut off by num_predict ends mid-sentence - drop the broken tail
+     * (the final text replaces the streamed one in the dialogue box)
+     */
+    private static String endAtSentence(String text, OllamaResponse response, int cutOff) {
+        if (cutOff <= 0 || response.eval_count < cutOff) return text;
+        int end = Math.max(text.lastIndexOf('.'), Math.max(text.lastIndexOf('!'), text.lastIndexOf('?')));
+        while (end + 1 < text.length() && (text.charAt(end + 1) == '"' || text.charAt(end + 1) == '\'')) {
+            end++; // Keep closing quotes
+        }
+        // No sentence end in the second half - a long sentence is better than half an answer
+        return end >= text.length() / 2 ? text.substring(0, end + 1) : text;
+    }
+
+    /**
+     * Ollama reports failures as {"error": "..."} (also in the middle of a stream)
+     */
+    private static void checkError(OllamaCodec codec) {
+        if (codec.hasError()) {
+            throw new IllegalStateException("Ollama error: " + codec.getError());
+        }
+    }
+
+    /**
+     * Close the stream and cancel the request on a worker thread - cancels come
+     * from the render thread (ESC), and closing a chunked stream waits for the
+     * worker blocked in read(), which against a stalled server can take seconds
+     */
+    private void abortInBackground(Net.HttpRequest httpRequest, InputStream stream) {
+        CompletableFuture.runAsync(() -> {
+            closeQuietly(stream);
+            net.cancelHttpRequest(httpRequest);
+        });
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // Already closed by the worker
+        }
+    }
+
+    /**
+     * Wrap a token callback so every call is re-posted to the libGDX game thread
+     */
+    public static Consumer<String> onGameThread(Consumer<String> onToken) {
+        return token -> Gdx.app.postRunnable(() -> onToken.accept(token));
+    }
+
+    /**
+     * Hand a finished result to the game thread via Gdx.app.postRunnable.
+     * Returns the same future so the caller can still cancel it.
+     */
+    public static <T> CompletableFuture<T> deliverOnGameThread(CompletableFuture<T> future, Consumer<T> onGameThread) {
+        future.thenAccept(result -> Gdx.app.postRunnable(() -> onGameThread.accept(result)));
+        return future;
+    }
+
+    /**
+     * Unwrap CompletionException so logs show the real cause
+     */
+    private static String describe(Throwable e) {
+        Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
     }
     
     /**
@@ -86,42 +821,587 @@ public class OllamaClient {
      * Build contextual prompt for NPC dialogue
      */
     public String askNPC(String npcName, String npcRole, String playerQuestion) {
-        String contextPrompt = String.format(
-            "You are %s, a %s in a medieval village. " +
-            "A detective is investigating something in the village. " +
-            "Respond to them in character. Keep it brief (1-2 sentences). " +
-            "Detective asks: %s",
-            npcName, npcRole, playerQuestion
-        );
+        return askNPCAsync(npcName, npcRole, playerQuestion).join();
+    }
         
-        return ask(contextPrompt);
+    /**
+     * Non-blocking version of askNPC
+     */
+    public CompletableFuture<String> askNPCAsync(String npcName, String npcRole, String playerQuestion) {
+        return converse(npcName, npcRole, playerQuestion, false, null);
+    }
+
+    /**
+     * Streaming version of askNPC - see askStreaming
+     */
+    public CompletableFuture<String> askNPCStreaming(String npcName, String npcRole, String playerQuestion,
+                                                     Consumer<String> onToken) {
+        return converse(npcName, npcRole, playerQuestion, true, onToken);
+    }
+
+    /**
+     * Recall the NPC's memories relevant to the question (if there is a long-term
+     * memory), then ask. Recall gets a small time budget - a slow embedding never
+     * holds up the answer for long, it just comes without memories.
+     */
+    private CompletableFuture<String> converse(String npcName, String npcRole, String playerQuestion,
+                                               boolean stream, Consumer<String> onToken) {
+        NpcMemory longTerm = memory;
+        if (longTerm == null) {
+            return converse(npcName, npcRole, playerQuestion, Collections.emptyList(), stream, onToken);
+        }
+
+        // Past the budget the recall is cancelled, not just ignored - that also cancels
+        // its embedding request, which would otherwise keep a slot the answer needs
+        CompletableFuture<List<String>> recall = longTerm.recall(npcName, playerQuestion, NpcMemory.DEFAULT_RECALL);
+        CompletableFuture.delayedExecutor(MEMORY_RECALL_BUDGET_MS, TimeUnit.MILLISECONDS)
+            .execute(() -> recall.cancel(true));
+        CompletableFuture<List<String>> recalled = recall.exceptionally(e -> Collections.emptyList());
+        CompletableFuture<String> result = new CompletableFuture<>();
+        forwardCancel(result, recall);
+        recalled.thenAccept(memories -> {
+            if (result.isDone()) return;
+            CompletableFuture<String> answer = converse(npcName, npcRole, playerQuestion, memories, stream, onToken);
+            forwardCancel(result, answer);
+            answer.whenComplete((text, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(text);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Ask a question inside the NPC's conversation session.
+     * The first question is a plain (cacheable) prompt; later ones send only the
+     * new turn plus the context tokens Ollama returned last time.
+     * Recalled memories go into the prompt instead of replayed turns.
+     */
+    private CompletableFuture<String> converse(String npcName, String npcRole, String playerQuestion,
+                                               List<String> memories, boolean stream, Consumer<String> onToken) {
+        NpcConversation conversation = getConversation(npcName, npcRole);
+        int epoch = conversation.getEpoch(); // A summary finishing first makes this request's context stale
+
+        if (conversation.isEmpty()) {
+            // Recorded from the model's own answer (with its context) - a fallback line never becomes a turn.
+            // A cached answer was remembered when the model first gave it.
+            return withFallback(askCached(
+                buildQuestionPrompt(npcName, npcRole, memories, playerQuestion),
+                Task.INTERROGATION, QUESTION_TTL_MS, 1, stream, onToken, Priority.PLAYER,
+                (r, fromModel) -> {
+                    conversation.recordTurn(playerQuestion, r.response, r.context, r.prompt_eval_count, epoch);
+                    if (fromModel) rememberAnswer(npcName, playerQuestion, r.response);
+                }));
+        }
+
+        // Conversation grew too long - condense older turns in the background.
+        // This question still uses the current context; the next one picks up the summary.
+        if (conversation.needsSummary()) {
+            summarizeConversation(conversation);
+        }
+
+        OllamaRequest request;
+        int[] context = conversation.getContext();
+        GenerationOptions limits = generationPolicy.optionsFor(Task.INTERROGATION, router.modelFor(Task.INTERROGATION));
+        if (context != null && context.length + limits.num_predict > limits.num_ctx) {
+            context = null; // Wouldn't fit num_ctx - Ollama would cut the persona off the front
+        }
+        if (context != null) {
+            // Persona and earlier turns are already inside the context tokens
+            request = newRequest(buildMemoryNotes(memories) + "Detective asks: " + playerQuestion, stream,
+                Task.INTERROGATION);
+            request.context = context;
+        } else {
+            // Context was dropped (too long) - re-prime from the persona and recent turns
+            request = newRequest(buildReplayPrompt(conversation, memories, playerQuestion), stream, Task.INTERROGATION);
+        }
+
+        CompletableFuture<OllamaResponse> response = sendShared(request, onToken, Priority.PLAYER);
+        response.thenAccept(r -> {
+            conversation.recordTurn(playerQuestion, r.response, r.context, r.prompt_eval_count, epoch);
+            rememberAnswer(npcName, playerQuestion, r.response);
+        });
+        return withFallback(textOf(response));
+    }
+
+    /**
+     * Put a model's answer to the detective into the NPC's long-term memory
+     */
+    private void rememberAnswer(String npcName, String playerQuestion, String answer) {
+        NpcMemory longTerm = memory;
+        if (longTerm != null && answer != null && !answer.isEmpty()) {
+            longTerm.rememberAnswer(npcName, playerQuestion, answer);
+        }
+    }
+
+    private String buildReplayPrompt(NpcConversation conversation, List<String> memories, String playerQuestion) {
+        StringBuilder prompt = new StringBuilder(persona(conversation.getNpcName(), conversation.getNpcRole()));
+        prompt.append("Respond to them in character. Keep it brief (1-2 sentences).\n");
+        String summary = conversation.getSummary();
+        if (summary != null) {
+            prompt.append("What you remember from talking to the detective before: ").append(summary).append('\n');
+        }
+        prompt.append(buildMemoryNotes(memories));
+        // Relevant memories stand in for most of the replay - the last turn keeps the thread
+        int replayTurns = memories.isEmpty() ? NpcConversation.REPLAY_TURNS : 1;
+        prompt.append("Earlier in this conversation:\n");
+        for (NpcConversation.Turn turn : conversation.getRecentTurns(replayTurns)) {
+            prompt.append("Detective: ").append(turn.question).append('\n');
+            prompt.append("You: ").append(turn.answer).append('\n');
+        }
+        prompt.append("Detective asks: ").append(playerQuestion);
+        return prompt.toString();
+    }
+
+    /**
+     * Condense the older turns of a conversation (plus any earlier summary) into
+     * a short summary with a background model call
+     */
+    private void summarizeConversation(NpcConversation conversation) {
+        List<NpcConversation.Turn> toSummarize = conversation.beginSummary();
+        if (toSummarize.isEmpty()) {
+            conversation.abortSummary();
+            return;
+        }
+        long lastIndex = toSummarize.get(toSummarize.size() - 1).index;
+
+        StringBuilder prompt = new StringBuilder(String.format(
+            "Summarize this conversation between a detective and %s, a %s, in at most 3 sentences. " +
+            "Keep names, places, times and any claims or accusations.\n",
+            conversation.getNpcName(), conversation.getNpcRole()));
+        String previous = conversation.getSummary();
+        if (previous != null) {
+            prompt.append("Summary so far: ").append(previous).append('\n');
+        }
+        for (NpcConversation.Turn turn : toSummarize) {
+            prompt.append("Detective: ").append(turn.question).append('\n');
+            prompt.append(conversation.getNpcName()).append(": ").append(turn.answer).append('\n');
+        }
+
+        // No fallback here - a canned line must never replace real memories
+        textOf(sendShared(newRequest(prompt.toString(), false, Task.BACKGROUND), null, Priority.BACKGROUND)).whenComplete((summary, error) -> {
+            if (error != null || summary.isEmpty()) {
+                conversation.abortSummary();
+            } else {
+                conversation.applySummary(summary, lastIndex);
+                System.out.println("Summarized conversation with " + conversation.getNpcName()
+                    + " (now ~" + conversation.getTokenEstimate() + " tokens)");
+            }
+        });
+    }
+
+    /**
+     * Estimated prompt size of every conversation, by NPC name
+     */
+    public Map<String, Integer> getConversationTokenCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        synchronized (conversations) {
+            for (NpcConversation conversation : conversations.values()) {
+                counts.put(conversation.getNpcName(), conversation.getTokenEstimate());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Conversation session with an NPC, created on first use
+     */
+    public NpcConversation getConversation(String npcName, String npcRole) {
+        synchronized (conversations) {
+            NpcConversation conversation = conversations.get(npcName);
+            if (conversation == null) {
+                conversation = new NpcConversation(npcName, npcRole);
+                conversations.put(npcName, conversation);
+            }
+            return conversation;
+        }
+    }
+
+    private String buildQuestionPrompt(String npcName, String npcRole, List<String> memories, String playerQuestion) {
+        return persona(npcName, npcRole) +
+            "Respond to them in character. Keep it brief (1-2 sentences).\n" +
+            buildMemoryNotes(memories) +
+            "Detective asks: " + playerQuestion;
+    }
+
+    /**
+     * Recalled memories as prompt lines ("" if there are none)
+     */
+    private static String buildMemoryNotes(List<String> memories) {
+        if (memories.isEmpty()) return "";
+        StringBuilder notes = new StringBuilder("Things you remember that may matter now:\n");
+        for (String memory : memories) {
+            notes.append("- ").append(memory).append('\n');
+        }
+        return notes.toString();
+    }
+
+    /**
+     * Give NPCs a long-term memory; relevant past exchanges are recalled before
+     * every question (see NpcMemory)
+     */
+    public void setMemory(NpcMemory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * Who the NPC is - plus what they know and hide in the current case, if one is set
+     */
+    private String persona(String npcName, String npcRole) {
+        Function<String, String> notes = caseNotes;
+        String caseNote = notes == null ? null : notes.apply(npcName);
+        String persona;
+        if (caseNote == null) {
+            persona = String.format("You are %s, a %s in a medieval village. " +
+                "A detective is investigating something in the village. ", npcName, npcRole);
+        } else {
+            persona = String.format("You are %s, a %s in a medieval village. %s ", npcName, npcRole, caseNote);
+        }
+        NpcKnowledge heard = knowledge;
+        String gossip = heard == null ? null : heard.describeFor(npcName);
+        return gossip == null ? persona : persona + gossip + " ";
+    }
+
+    /**
+     * Let NPC prompts include what the NPC heard from other villagers
+     */
+    public void setKnowledge(NpcKnowledge knowledge) {
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * One NPC telling another a piece of news while the detective isn't around.
+     * BACKGROUND priority with the short GOSSIP limits (one line), no cache and
+     * no fallback; the full response is returned so the caller can charge its
+     * token counts to a budget.
+     */
+    public CompletableFuture<OllamaResponse> askGossip(String speakerName, String speakerRole,
+                                                       String listenerName, String listenerRole) {
+        String prompt = buildGossipPrompt(speakerName, speakerRole, listenerName, listenerRole);
+        return sendShared(newRequest(prompt, false, Task.GOSSIP), null, Priority.BACKGROUND);
+    }
+
+    /**
+     * The gossip prompt, also used by callers to estimate its size
+     */
+    public String buildGossipPrompt(String speakerName, String speakerRole, String listenerName, String listenerRole) {
+        return persona(speakerName, speakerRole) +
+            String.format("The detective is not around. You are chatting with %s, the %s. " +
+                "Tell them one piece of news, rumour or something you saw about what happened - " +
+                "pass on gossip you heard or share your own story, but keep your secrets. " +
+                "Answer with only what you say, one sentence, in character.", listenerName, listenerRole);
+    }
+
+    /**
+     * Give NPCs knowledge of the current case (see MysteryCase.describeFor).
+     * Conversations from an earlier case are forgotten. Null removes the case.
+     */
+    public void setCaseNotes(Function<String, String> notesForNpc) {
+        caseNotes = notesForNpc;
+        synchronized (conversations) {
+            conversations.clear();
+        }
     }
     
     /**
      * Simple greeting from NPC
      */
     public String getNPCGreeting(String npcName, String npcRole) {
-        String greetingPrompt = String.format(
-            "You are %s, a %s in a medieval village. " +
+        return getNPCGreetingAsync(npcName, npcRole).join();
+    }
+
+    /**
+     * Non-blocking version of getNPCGreeting
+     */
+    public CompletableFuture<String> getNPCGreetingAsync(String npcName, String npcRole) {
+        return withFallback(askCached(buildGreetingPrompt(npcName, npcRole), Task.GREETING, GREETING_TTL_MS, GREETING_VARIANTS,
+            false, null, Priority.PLAYER));
+    }
+
+    /**
+     * Streaming version of getNPCGreeting - see askStreaming
+     */
+    public CompletableFuture<String> getNPCGreetingStreaming(String npcName, String npcRole, Consumer<String> onToken) {
+        return withFallback(askCached(buildGreetingPrompt(npcName, npcRole), Task.GREETING, GREETING_TTL_MS, GREETING_VARIANTS,
+            true, onToken, Priority.PLAYER));
+    }
+
+    /**
+     * getNPCGreetingAsync with a latency budget - see askWithin.
+     * The stand-in is an earlier greeting of this NPC when one is cached.
+     */
+    public CompletableFuture<String> getNPCGreetingWithin(String npcName, String npcRole, long budgetMs,
+                                                          Consumer<String> onLateAnswer) {
+        String key = ResponseCache.key(router.modelFor(Task.GREETING), buildGreetingPrompt(npcName, npcRole));
+        return withDeadline(getNPCGreetingAsync(npcName, npcRole), budgetMs, key, onLateAnswer);
+    }
+
+    /**
+     * Streaming greeting with a first-token budget: if no token arrived within
+     * budgetMs, onStandIn gets a line to show meanwhile. Tokens keep streaming to
+     * onToken afterwards and the future still completes with the real greeting.
+     */
+    public CompletableFuture<String> getNPCGreetingStreaming(String npcName, String npcRole, Consumer<String> onToken,
+                                                             long budgetMs, Consumer<String> onStandIn) {
+        String key = ResponseCache.key(router.modelFor(Task.GREETING), buildGreetingPrompt(npcName, npcRole));
+        AtomicBoolean answering = new AtomicBoolean(false);
+        CompletableFuture<String> greeting = getNPCGreetingStreaming(npcName, npcRole, token -> {
+            answering.set(true);
+            onToken.accept(token);
+        });
+        watchDeadline(greeting, answering, budgetMs, key, onStandIn);
+        return greeting;
+    }
+
+    /**
+     * Speculative greeting at PREFETCH priority. Streams (to nobody) so a player
+     * request for the same greeting can join it mid-generation. Unlike the player
+     * versions this fails instead of returning a fallback line - a dropped or
+     * failed prefetch should just be a miss.
+     */
+    public CompletableFuture<String> prefetchNPCGreeting(String npcName, String npcRole) {
+        return askCached(buildGreetingPrompt(npcName, npcRole), Task.GREETING, GREETING_TTL_MS, GREETING_VARIANTS,
+            true, token -> { }, Priority.PREFETCH);
+    }
+
+    private String buildGreetingPrompt(String npcName, String npcRole) {
+        Function<String, String> notes = caseNotes;
+        String caseNote = notes == null ? null : notes.apply(npcName);
+        return String.format(
+            "You are %s, a %s in a medieval village. %s" +
             "Greet a detective who just approached you. " +
             "Be brief and in character (1 sentence).",
-            npcName, npcRole
+            npcName, npcRole, caseNote == null ? "" : caseNote + " "
         );
-        
-        return ask(greetingPrompt);
     }
     
     /**
-     * Check if Ollama is running and accessible
+     * Response cache statistics (hit/miss counters)
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Request scheduler (in-flight limit, queue and per-priority statistics)
+     */
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Request coalescing statistics (how many calls shared an in-flight request)
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Output length and context limits per task, adapted to measured latency
+     */
+    public GenerationPolicy getGenerationPolicy() {
+        return generationPolicy;
+    }
+
+    /**
+     * Race slow player requests against a second server (needs two or more servers).
+     * The hedge goes out once a request takes longer than the recent p95.
+     */
+    public void setHedging(boolean enabled) {
+        hedging = enabled;
+    }
+
+    /**
+     * Time to first streamed token, over recent requests
+     */
+    public LatencyTracker getFirstTokenLatency() {
+        return firstTokenLatency;
+    }
+
+    /**
+     * Time to the complete answer, over recent requests
+     */
+    public LatencyTracker getTotalLatency() {
+        return totalLatency;
+    }
+
+    // Deadline and hedging statistics
+    public long getDeadlineMisses() { return deadlineMisses.get(); }
+    public long getLateAnswers() { return lateAnswers.get(); }
+    public long getHedgesSent() { return hedgesSent.get(); }
+    public long getHedgeWins() { return hedgeWins.get(); }
+
+    /**
+     * Get simple debug info about latency, deadlines and hedging
+     */
+    public String getLatencyDebugInfo() {
+        return String.format("latency: first token %s; total %s; %d deadline misses (%d answered late), %d hedges (%d won)",
+            firstTokenLatency.getDebugInfo(), totalLatency.getDebugInfo(),
+            getDeadlineMisses(), getLateAnswers(), getHedgesSent(), getHedgeWins());
+    }
+
+    /**
+     * Check if some Ollama server is running and has the default model (asks /api/tags).
+     * Blocks for up to a couple of seconds - use checkHealthAsync or the
+     * router's breaker states on the render thread.
      */
     public boolean isOllamaAvailable() {
-        try {
-            // Try a simple request to check connectivity
-            // This would be a ping-like request to Ollama
-            return true; // Placeholder
-        } catch (Exception e) {
-            return false;
+        return checkHealthAsync().join();
+    }
+
+    /**
+     * Ask every server's /api/tags which models it has, so the router only sends
+     * requests where the model is installed. A reachable server closes its circuit
+     * breaker right away. Completes with true if some server has the default
+     * model; never fails.
+     */
+    public CompletableFuture<Boolean> checkHealthAsync() {
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+        for (OllamaEndpoint endpoint : router.getEndpoints()) {
+            checks.add(checkEndpoint(endpoint));
+        }
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            for (String model : router.getConfiguredModels()) {
+                if (!isInstalledAnywhere(model)) {
+                    System.err.println("No Ollama server has " + model + " (ollama pull " + model + ")"
+                        + (model.equals(OllamaRouter.DEFAULT_MODEL) ? "" : " - using " + OllamaRouter.DEFAULT_MODEL));
+                }
+            }
+            return isInstalledAnywhere(OllamaRouter.DEFAULT_MODEL);
+        });
+    }
+
+    private boolean isInstalledAnywhere(String model) {
+        for (OllamaEndpoint endpoint : router.getEndpoints()) {
+            if (endpoint.hasModel(model) && endpoint.getBreaker().getState() != CircuitBreaker.State.OPEN) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Health check of one server - true if it answered
+     */
+    private CompletableFuture<Boolean> checkEndpoint(OllamaEndpoint endpoint) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Net.HttpRequest httpRequest = new Net.HttpRequest(Net.HttpMethods.GET);
+        httpRequest.setUrl(endpoint.getTagsUrl());
+        httpRequest.setTimeOut(HEALTH_TIMEOUT_MS);
+
+        net.sendHttpRequest(httpRequest, new Net.HttpResponseListener() {
+            @Override
+            public void handleHttpResponse(Net.HttpResponse httpResponse) {
+                int status = httpResponse.getStatus().getStatusCode();
+                String body = httpResponse.getResultAsString();
+                if (status != HttpStatus.SC_OK) {
+                    endpoint.getBreaker().recordFailure();
+                    result.complete(false);
+                    return;
+                }
+                endpoint.getBreaker().recordSuccess();
+                try {
+                    endpoint.setInstalledModels(modelNames(json.get().fromJson(TagsResponse.class, body)));
+                } catch (Exception e) {
+                    System.err.println("Unreadable model list from " + endpoint.getBaseUrl() + ": " + describe(e));
+                }
+                result.complete(true);
+            }
+
+            @Override
+            public void failed(Throwable t) {
+                endpoint.getBreaker().recordFailure();
+                result.complete(false);
+            }
+
+            @Override
+            public void cancelled() {
+                result.complete(false);
+            }
+        });
+        return result;
+    }
+
+    private static Set<String> modelNames(TagsResponse tags) {
+        Set<String> names = new HashSet<>();
+        if (tags == null || tags.models == null) return names;
+        for (ModelInfo info : tags.models) {
+            if (info.name == null) continue;
+            names.add(info.name);
+            // Ollama lists "llama3" as "llama3:latest"
+            if (info.name.endsWith(":latest")) names.add(info.name.substring(0, info.name.length() - ":latest".length()));
         }
+        return names;
+    }
+
+    /**
+     * Load the models in the background so the first dialogue doesn't pay for it:
+     * health check, then an empty-prompt generate (Ollama only loads the model
+     * for that) with keep_alive, for every model on every server that has it.
+     * Completes with the warm-up time in ms, or -1.
+     */
+    public CompletableFuture<Long> warmUp() {
+        long start = System.currentTimeMillis();
+        return checkHealthAsync().thenCompose(available -> {
+            if (!available) {
+                System.err.println("Ollama warm-up skipped - no server has " + OllamaRouter.DEFAULT_MODEL);
+                return CompletableFuture.completedFuture(-1L);
+            }
+            List<CompletableFuture<OllamaResponse>> loads = new ArrayList<>();
+            for (OllamaEndpoint endpoint : router.getEndpoints()) {
+                for (String model : router.getActiveModels()) {
+                    if (!endpoint.hasModel(model)) continue;
+                    OllamaRequest load = new OllamaRequest();
+                    load.model = model;
+                    load.prompt = "";
+                    load.keep_alive = KEEP_ALIVE;
+                    // Load with the num_ctx real requests will use, or the first one reloads the model
+                    load.options = new GenerationOptions();
+                    load.options.num_ctx = generationPolicy.getContextSize(model);
+                    loads.add(sendDirect(load, endpoint));
+                }
+            }
+            return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).handle((ignored, error) -> {
+                if (error != null) {
+                    System.err.println("Ollama warm-up failed: " + describe(error));
+                    return -1L;
+                }
+                warmUpMillis = System.currentTimeMillis() - start;
+                return warmUpMillis;
+            });
+        });
+    }
+
+    /**
+     * Send straight to a server, outside the scheduler and the latency
+     * statistics (a model load would skew the percentiles)
+     */
+    private CompletableFuture<OllamaResponse> sendDirect(OllamaRequest request, OllamaEndpoint endpoint) {
+        CompletableFuture<OllamaResponse> future = sendRequest(request, token -> { }, endpoint.getGenerateUrl());
+        future.whenComplete((response, error) -> recordOutcome(endpoint.getBreaker(), future, error));
+        return future;
+    }
+
+    /**
+     * True once warmUp() loaded the models
+     */
+    public boolean isWarm() {
+        return warmUpMillis >= 0;
+    }
+
+    /**
+     * How long the warm-up took (health check + model loads), -1 if it hasn't finished
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+
+    /**
+     * Server pool and model-per-task policy (per-server load, latency and breaker state)
+     */
+    public OllamaRouter getRouter() {
+        return router;
     }
     
     // Inner classes for JSON serialization
@@ -129,10 +1409,39 @@ public class OllamaClient {
         public String model;
         public String prompt;
         public boolean stream;
+        public int[] context; // Conversation so far, as returned by the previous response
+        public String keep_alive; // How long Ollama keeps the model loaded afterwards
+        public String format; // "json" makes the model answer with valid JSON only
+        public GenerationOptions options; // Limits from the GenerationPolicy
+        public transient Task task; // Not sent - which policy limits the answer is measured against
+    }
+
+    public static class GenerationOptions {
+        public int num_predict; // Max tokens to generate (0 = model default)
+        public int num_ctx;     // Context window (0 = model default; a change reloads the model)
+        public String[] stop;   // Generation ends at any of these
     }
     
     public static class OllamaResponse {
         public String response;
         public boolean done;
+        public String error; // Set instead of response when Ollama rejects the request
+        public int[] context; // Encoded conversation - send back to continue it
+        public int prompt_eval_count; // Prompt tokens the model had to process
+        public int eval_count; // Tokens generated
+        public long eval_duration; // Nanoseconds spent generating
+    }
+
+    public static class EmbeddingResponse {
+        public float[] embedding;
+        public String error;
+    }
+
+    public static class TagsResponse {
+        public ModelInfo[] models; // Installed models
+    }
+
+    public static class ModelInfo {
+        public String name;
     }
 }
@@ -0,0 +1,485 @@
+package com.вувуеуdetective.game.ai;
+
+import com.вувуеуdetective.game.ai.OllamaClient.GenerationOptions;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaRequest;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hand-written JSON codec for the few fields of /api/generate we use.
+ * Requests are written into a reused per-thread buffer; responses are read
+ * line by line (NDJSON) into reused byte and char buffers and the fields are
+ * pulled straight out of the bytes - no readLine() strings, no JsonValue tree,
+ * no reflection. A streamed token costs one small String and nothing else.
+ *
+ * Decoding is stateful: use one codec per response stream, on one thread.
+ */
+public class OllamaCodec {
+
+    private static final byte[] KEY_RESPONSE = ascii("response");
+    private static final byte[] KEY_DONE = ascii("done");
+    private static final byte[] KEY_ERROR = ascii("error");
+    private static final byte[] KEY_CONTEXT = ascii("context");
+    private static final byte[] KEY_PROMPT_EVAL_COUNT = ascii("prompt_eval_count");
+    private static final byte[] KEY_EVAL_COUNT = ascii("eval_count");
+    private static final byte[] KEY_EVAL_DURATION = ascii("eval_duration");
+
+    private static final ThreadLocal<StringBuilder> requestBuffer =
+        ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    // Input buffer: bytes [start, limit) are read but not yet parsed
+    private byte[] buf = new byte[8192];
+    private int start = 0;
+    private int limit = 0;
+    private int pos;  // Parser position inside the current line
+    private int end;  // End of the current line
+
+    // Fields of the last decoded object
+    private final StringBuilder response = new StringBuilder();
+    private final StringBuilder error = new StringBuilder();
+    private boolean hasError;
+    private boolean done;
+    private int[] context = new int[256];
+    private int contextLength; // -1 = no context in this object
+    private int promptEvalCount;
+    private int evalCount;
+    private long evalDuration;
+
+    // ---- Encoding ----
+
+    /**
+     * Request body as JSON. Null fields are left out.
+     */
+    public static String encode(OllamaRequest request) {
+        StringBuilder out = requestBuffer.get();
+        out.setLength(0);
+        encode(request, out);
+        return out.toString();
+    }
+
+    public static void encode(OllamaRequest request, StringBuilder out) {
+        out.append("{\"model\":");
+        appendString(out, request.model);
+        out.append(",\"prompt\":");
+        appendString(out, request.prompt);
+        out.append(",\"stream\":").append(request.stream);
+        if (request.keep_alive != null) {
+            out.append(",\"keep_alive\":");
+            appendString(out, request.keep_alive);
+        }
+        if (request.format != null) {
+            out.append(",\"format\":");
+            appendString(out, request.format);
+        }
+        if (request.options != null) {
+            appendOptions(out, request.options);
+        }
+        if (request.context != null) {
+            out.append(",\"context\":[");
+            for (int i = 0; i < request.context.length; i++) {
+                if (i > 0) out.append(',');
+                out.append(request.context[i]);
+            }
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Append ,"options":{...} with the limits that are set
+     */
+    private static void appendOptions(StringBuilder out, GenerationOptions options) {
+        out.append(",\"options\":{");
+        int fields = 0;
+        if (options.num_predict > 0) {
+            out.append("\"num_predict\":").append(options.num_predict);
+            fields++;
+        }
+        if (options.num_ctx > 0) {
+            out.append(fields++ > 0 ? "," : "").append("\"num_ctx\":").append(options.num_ctx);
+        }
+        if (options.stop != null) {
+            out.append(fields > 0 ? "," : "").append("\"stop\":[");
+            for (int i = 0; i < options.stop.length; i++) {
+                if (i > 0) out.append(',');
+                appendString(out, options.stop[i]);
+            }
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Append text as a quoted JSON string
+     */
+    public static void appendString(StringBuilder out, String text) {
+        if (text == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    // ---- Decoding ----
+
+    /**
+     * Read and decode the next non-empty line (one JSON object). A body without
+     * a trailing newline counts as a line too. Returns false at end of stream.
+     */
+    public boolean readObject(InputStream in) throws IOException {
+        while (true) {
+            int newline = indexOf((byte) '\n', start, limit);
+            if (newline >= 0) {
+                int lineStart = start;
+                start = newline + 1;
+                if (isBlank(lineStart, newline)) continue;
+                decode(lineStart, newline);
+                return true;
+            }
+            if (!fill(in)) {
+                // End of stream: whatever is left is the last object
+                if (isBlank(start, limit)) return false;
+                int lineStart = start;
+                start = limit;
+                decode(lineStart, limit);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Decode one JSON object held in bytes [offset, offset + length)
+     */
+    public void decode(byte[] bytes, int offset, int length) {
+        if (buf.length < length) buf = new byte[length];
+        System.arraycopy(bytes, offset, buf, 0, length);
+        start = limit = length; // Nothing buffered for readObject afterwards
+        decode(0, length);
+    }
+
+    /**
+     * Read more bytes, compacting or growing the buffer for lines longer than it
+     */
+    private boolean fill(InputStream in) throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2); // Long final chunk (big context)
+        }
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) return false;
+        limit += read;
+        return true;
+    }
+
+    private void decode(int from, int to) {
+        pos = from;
+        end = to;
+        response.setLength(0);
+        error.setLength(0);
+        hasError = false;
+        done = false;
+        contextLength = -1;
+        promptEvalCount = 0;
+        evalCount = 0;
+        evalDuration = 0;
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            int keyStart = pos;
+            while (pos < end && buf[pos] != '"') {
+                if (buf[pos] == '\\') pos++; // Our keys have no escapes, but don't trip over others
+                pos++;
+            }
+            int keyEnd = pos;
+            expect('"');
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (keyIs(keyStart, keyEnd, KEY_RESPONSE)) {
+                readString(response);
+            } else if (keyIs(keyStart, keyEnd, KEY_DONE)) {
+                done = readBoolean();
+            } else if (keyIs(keyStart, keyEnd, KEY_CONTEXT)) {
+                readContext();
+            } else if (keyIs(keyStart, keyEnd, KEY_ERROR)) {
+                hasError = peek() != 'n';
+                if (hasError) readString(error); else skipValue();
+            } else if (keyIs(keyStart, keyEnd, KEY_PROMPT_EVAL_COUNT)) {
+                promptEvalCount = (int) readLong();
+            } else if (keyIs(keyStart, keyEnd, KEY_EVAL_COUNT)) {
+                evalCount = (int) readLong();
+            } else if (keyIs(keyStart, keyEnd, KEY_EVAL_DURATION)) {
+                evalDuration = readLong();
+            } else {
+                skipValue(); // model, created_at, durations we don't use...
+            }
+
+            skipWhitespace();
+            byte next = next();
+            if (next == '}') return;
+            if (next != ',') throw malformed("',' or '}'");
+        }
+    }
+
+    private void readString(StringBuilder out) {
+        if (peek() == 'n') { // null
+            skipValue();
+            return;
+        }
+        expect('"');
+        while (true) {
+            byte b = next();
+            if (b == '"') return;
+            if (b == '\\') {
+                byte escaped = next();
+                switch (escaped) {
+                    case 'n': out.append('\n'); break;
+                    case 't': out.append('\t'); break;
+                    case 'r': out.append('\r'); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'u': out.append((char) readHex4()); break; // Surrogate pairs come as two escapes
+                    default: out.append((char) escaped); // \" \\ \/
+                }
+            } else if (b >= 0) {
+                out.append((char) b);
+            } else {
+                readUtf8(b, out);
+            }
+        }
+    }
+
+    /**
+     * Multi-byte UTF-8 sequence starting with lead byte b
+     */
+    private void readUtf8(byte b, StringBuilder out) {
+        int lead = b & 0xFF;
+        int codePoint;
+        int extra;
+        if (lead >= 0xF0) {
+            codePoint = lead & 0x07;
+            extra = 3;
+        } else if (lead >= 0xE0) {
+            codePoint = lead & 0x0F;
+            extra = 2;
+        } else {
+            codePoint = lead & 0x1F;
+            extra = 1;
+        }
+        for (int i = 0; i < extra; i++) {
+            codePoint = (codePoint << 6) | (next() & 0x3F);
+        }
+        if (codePoint >= 0x10000) {
+            out.append(Character.highSurrogate(codePoint)).append(Character.lowSurrogate(codePoint));
+        } else {
+            out.append((char) codePoint);
+        }
+    }
+
+    private int readHex4() {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(next(), 16);
+            if (digit < 0) throw malformed("hex digit");
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private boolean readBoolean() {
+        byte b = peek();
+        skipValue();
+        return b == 't';
+    }
+
+    private long readLong() {
+        boolean negative = peek() == '-';
+        if (negative) pos++;
+        long value = 0;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos++] - '0');
+        }
+        skipValue(); // Fraction or exponent, if any
+        return negative ? -value : value;
+    }
+
+    private void readContext() {
+        if (peek() == 'n') {
+            skipValue();
+            return;
+        }
+        expect('[');
+        contextLength = 0;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            if (contextLength == context.length) {
+                context = Arrays.copyOf(context, context.length * 2);
+            }
+            context[contextLength++] = (int) readLong();
+            skipWhitespace();
+            byte next = next();
+            if (next == ']') return;
+            if (next != ',') throw malformed("',' or ']'");
+        }
+    }
+
+    /**
+     * Skip any JSON value (the rest of a number, a literal, a string, object or array)
+     */
+    private void skipValue() {
+        byte b = peek();
+        if (b == '"') {
+            pos++;
+            while (true) {
+                byte c = next();
+                if (c == '\\') pos++;
+                else if (c == '"') return;
+            }
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            while (true) {
+                byte c = next();
+                if (c == '"') {
+                    pos--;
+                    skipValue();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) return;
+                }
+            }
+        }
+        while (pos < end) {
+            byte c = buf[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n') return;
+            pos++;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\r' || buf[pos] == '\n')) {
+            pos++;
+        }
+    }
+
+    private byte peek() {
+        if (pos >= end) throw malformed("more input");
+        return buf[pos];
+    }
+
+    private byte next() {
+        if (pos >= end) throw malformed("more input");
+        return buf[pos++];
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw malformed("'" + c + "'");
+    }
+
+    private boolean keyIs(int from, int to, byte[] key) {
+        if (to - from != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buf[from + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') return false;
+        }
+        return true;
+    }
+
+    private IllegalStateException malformed(String expected) {
+        return new IllegalStateException("Malformed Ollama JSON: expected " + expected + " at byte " + pos);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // ---- Decoded fields (valid until the next readObject/decode) ----
+
+    /**
+     * Text of the last object (reused buffer - copy it with toString() to keep it)
+     */
+    public CharSequence getResponse() { return response; }
+    public boolean isDone() { return done; }
+    public boolean hasError() { return hasError; }
+    public String getError() { return hasError ? error.toString() : null; }
+    public boolean hasContext() { return contextLength >= 0; }
+    public int getPromptEvalCount() { return promptEvalCount; }
+    public int getEvalCount() { return evalCount; }
+    public long getEvalDuration() { return evalDuration; }
+
+    /**
+     * Copy of the context tokens, or null if the object had none
+     */
+    public int[] copyContext() {
+        return contextLength < 0 ? null : Arrays.copyOf(context, contextLength);
+    }
+
+    /**
+     * The last object as an OllamaResponse (allocates - use for final chunks and whole replies)
+     */
+    public OllamaResponse toResponse() {
+        OllamaResponse result = new OllamaResponse();
+        result.response = response.toString();
+        result.done = done;
+        result.error = getError();
+        result.context = copyContext();
+        result.prompt_eval_count = promptEvalCount;
+        result.eval_count = evalCount;
+        result.eval_duration = evalDuration;
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One Ollama server in the router's pool, with the load and latency
+ * numbers the router uses to pick between servers.
+ */
+public class OllamaEndpoint {
+
+    // Weight of the newest sample in the latency average
+    private static final double EWMA_ALPHA = 0.2;
+    // Latency assumed before the first answer, so fresh servers get tried
+    private static final double INITIAL_LATENCY_MS = 1000;
+
+    private final String baseUrl;
+    private final CircuitBreaker breaker;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private double latencyEwma = -1; // Guarded by "this"; -1 = no samples yet
+    private volatile Set<String> installedModels = null; // null = not checked yet
+
+    // Statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public OllamaEndpoint(String baseUrl, CircuitBreaker breaker) {
+        this.baseUrl = baseUrl;
+        this.breaker = breaker;
+    }
+
+    public String getBaseUrl() { return baseUrl; }
+    public String getGenerateUrl() { return baseUrl + "/api/generate"; }
+    public String getTagsUrl() { return baseUrl + "/api/tags"; }
+    public String getEmbeddingsUrl() { return baseUrl + "/api/embeddings"; }
+    public CircuitBreaker getBreaker() { return breaker; }
+
+    /**
+     * A request to this server has started
+     */
+    public void begin() {
+        outstanding.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    /**
+     * A request has ended. Only successful requests update the latency average -
+     * cancelled ones say nothing and failures are the breaker's business.
+     */
+    public void end(long millis, boolean succeeded, boolean cancelled) {
+        outstanding.decrementAndGet();
+        if (succeeded) {
+            synchronized (this) {
+                latencyEwma = latencyEwma < 0 ? millis : latencyEwma + EWMA_ALPHA * (millis - latencyEwma);
+            }
+        } else if (!cancelled) {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Expected wait if one more request was sent here: every request already
+     * running makes the next one roughly one average answer slower
+     */
+    public double getCost() {
+        return (outstanding.get() + 1) * getLatencyEstimate();
+    }
+
+    public synchronized double getLatencyEstimate() {
+        return latencyEwma < 0 ? INITIAL_LATENCY_MS : latencyEwma;
+    }
+
+    /**
+     * Models reported by /api/tags (null until a health check got through)
+     */
+    public void setInstalledModels(Set<String> models) {
+        installedModels = models;
+    }
+
+    /**
+     * False only if a health check showed the model is not installed here
+     */
+    public boolean mayServe(String model) {
+        Set<String> models = installedModels;
+        return models == null || models.contains(model);
+    }
+
+    /**
+     * True only if a health check showed the model is installed here
+     */
+    public boolean hasModel(String model) {
+        Set<String> models = installedModels;
+        return models != null && models.contains(model);
+    }
+
+    // Statistics getters
+    public int getOutstanding() { return outstanding.get(); }
+    public long getRequests() { return requests.get(); }
+    public long getFailures() { return failures.get(); }
+
+    /**
+     * Get simple debug info about this server
+     */
+    public String getDebugInfo() {
+        return String.format("%s: %d running, %d requests, %d failed, ~%.0f ms per answer, %s",
+            baseUrl, getOutstanding(), getRequests(), getFailures(), getLatencyEstimate(), breaker.getState());
+    }
+}
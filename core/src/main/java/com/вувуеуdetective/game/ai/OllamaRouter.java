@@ -0,0 +1,217 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Chooses where an LLM request goes: which model (per kind of task) and which
+ * Ollama server from the pool (least expected wait - outstanding requests
+ * times observed latency - among servers whose circuit breaker is not open).
+ *
+ * Servers come from OLLAMA_HOSTS (comma separated) or OLLAMA_HOST, defaulting
+ * to the local Ollama. Every server is assumed to serve every model until a
+ * health check reports its installed models.
+ *
+ * Each server works on slotsPerEndpoint requests at once (OLLAMA_NUM_PARALLEL,
+ * the same setting the servers use); the pool's capacity is what OllamaClient
+ * lets in flight, so adding a server adds throughput.
+ */
+public class OllamaRouter {
+
+    /**
+     * What a request is for - each kind can use its own model
+     */
+    public enum Task {
+        GREETING,      // One short in-character line, latency matters most
+        INTERROGATION, // Answers to the detective's questions, quality matters
+        BACKGROUND,    // Summaries and other work nobody is waiting on
+        GOSSIP,        // One line of villager small talk, off-screen
+        STRUCTURED,    // Game content as JSON (format mode) - useless unless it comes back whole
+        GENERAL,       // Anything else
+        EMBEDDING      // Vectors for NPC memory (/api/embeddings, not a chat model)
+    }
+
+    public static final String DEFAULT_BASE_URL = "http://localhost:11434";
+    public static final String DEFAULT_MODEL = "qwen2.5:0.5b";
+    // Requests a server works on at once unless OLLAMA_NUM_PARALLEL says otherwise
+    public static final int DEFAULT_SLOTS_PER_ENDPOINT = 2;
+
+    // Circuit breaker per server: open after this many failures in a row, back off 2 s doubling to 30 s
+    private static final int BREAKER_FAILURE_THRESHOLD = 3;
+    private static final long BREAKER_INITIAL_BACKOFF_MS = 2000;
+    private static final long BREAKER_MAX_BACKOFF_MS = 30000;
+
+    private final List<OllamaEndpoint> endpoints = new CopyOnWriteArrayList<>();
+    private final Map<Task, String> models = new EnumMap<>(Task.class); // Guarded by itself
+    private volatile int slotsPerEndpoint = DEFAULT_SLOTS_PER_ENDPOINT;
+
+    public OllamaRouter() {
+        for (Task task : Task.values()) {
+            models.put(task, DEFAULT_MODEL);
+        }
+        // A bigger model for interrogations - only used once a server reports it installed
+        models.put(Task.INTERROGATION, "qwen2.5:1.5b");
+        // A real embedding model if installed; the chat model can embed too, just worse
+        models.put(Task.EMBEDDING, "nomic-embed-text");
+    }
+
+    /**
+     * Router for the servers in OLLAMA_HOSTS / OLLAMA_HOST, or the local default,
+     * each with OLLAMA_NUM_PARALLEL slots
+     */
+    public static OllamaRouter fromEnvironment() {
+        OllamaRouter router = new OllamaRouter();
+        String parallel = System.getenv("OLLAMA_NUM_PARALLEL");
+        if (parallel != null && !parallel.trim().isEmpty()) {
+            try {
+                router.setSlotsPerEndpoint(Integer.parseInt(parallel.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring OLLAMA_NUM_PARALLEL=" + parallel + " (not a number)");
+            }
+        }
+        String hosts = System.getenv("OLLAMA_HOSTS");
+        if (hosts == null || hosts.trim().isEmpty()) {
+            hosts = System.getenv("OLLAMA_HOST");
+        }
+        if (hosts == null || hosts.trim().isEmpty()) {
+            hosts = DEFAULT_BASE_URL;
+        }
+        for (String host : hosts.split(",")) {
+            if (!host.trim().isEmpty()) router.addEndpoint(host);
+        }
+        return router;
+    }
+
+    /**
+     * Add a server to the pool ("host:port" or "http://host:port")
+     */
+    public OllamaEndpoint addEndpoint(String baseUrl) {
+        String url = baseUrl.trim();
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            url = "http://" + url;
+        }
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        OllamaEndpoint endpoint = new OllamaEndpoint(url, new CircuitBreaker(url, BREAKER_FAILURE_THRESHOLD,
+            BREAKER_INITIAL_BACKOFF_MS, BREAKER_MAX_BACKOFF_MS));
+        endpoints.add(endpoint);
+        return endpoint;
+    }
+
+    /**
+     * Requests each server works on at once
+     */
+    public void setSlotsPerEndpoint(int slots) {
+        slotsPerEndpoint = Math.max(1, slots);
+    }
+
+    public int getSlotsPerEndpoint() {
+        return slotsPerEndpoint;
+    }
+
+    /**
+     * Requests the whole pool works on at once
+     */
+    public int getCapacity() {
+        return Math.max(1, endpoints.size()) * slotsPerEndpoint;
+    }
+
+    /**
+     * Use a different model for a kind of task
+     */
+    public void setModel(Task task, String model) {
+        synchronized (models) {
+            models.put(task, model);
+        }
+    }
+
+    /**
+     * Model to use for a task. A model other than the default is only used once
+     * some server has reported it installed, so a missing model degrades to
+     * the default instead of failing every request.
+     */
+    public String modelFor(Task task) {
+        String model;
+        synchronized (models) {
+            model = models.get(task);
+        }
+        if (model.equals(DEFAULT_MODEL)) return model;
+        for (OllamaEndpoint endpoint : endpoints) {
+            if (endpoint.hasModel(model)) return model;
+        }
+        return DEFAULT_MODEL;
+    }
+
+    /**
+     * Generation models the tasks currently resolve to (what warm-up should load).
+     * Embedding models can't be loaded through /api/generate and are left out.
+     */
+    public Set<String> getActiveModels() {
+        Set<String> active = new LinkedHashSet<>();
+        for (Task task : Task.values()) {
+            if (task != Task.EMBEDDING) active.add(modelFor(task));
+        }
+        return active;
+    }
+
+    /**
+     * Models configured for the tasks, whether installed anywhere or not
+     */
+    public Set<String> getConfiguredModels() {
+        synchronized (models) {
+            return new LinkedHashSet<>(models.values());
+        }
+    }
+
+    /**
+     * Cheapest server for the model, other than exclude (may be null), among
+     * those with a free slot. A second server for a hedge or failover (exclude
+     * set) must have a free slot; a first choice goes to the cheapest busy server
+     * if all are full, since the client's cap already admitted it.
+     * The returned server's breaker has already let the request through, so the
+     * caller must send it and report the outcome. Null if no server is available.
+     */
+    public OllamaEndpoint pick(String model, OllamaEndpoint exclude) {
+        List<OllamaEndpoint> candidates = new ArrayList<>();
+        for (OllamaEndpoint endpoint : endpoints) {
+            if (endpoint == exclude || !endpoint.mayServe(model)) continue;
+            if (endpoint.getBreaker().getState() == CircuitBreaker.State.OPEN) continue;
+            candidates.add(endpoint);
+        }
+        candidates.sort(Comparator.comparingDouble(OllamaEndpoint::getCost));
+        int slots = slotsPerEndpoint;
+        for (OllamaEndpoint endpoint : candidates) {
+            if (endpoint.getOutstanding() < slots && endpoint.getBreaker().allowRequest()) return endpoint;
+        }
+        if (exclude != null) return null;
+        for (OllamaEndpoint endpoint : candidates) {
+            if (endpoint.getOutstanding() >= slots && endpoint.getBreaker().allowRequest()) return endpoint;
+        }
+        return null;
+    }
+
+    public List<OllamaEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Get simple debug info about the pool, one server per line
+     */
+    public String getDebugInfo() {
+        StringBuilder info = new StringBuilder("router:");
+        for (Task task : Task.values()) {
+            info.append(' ').append(task).append('=').append(modelFor(task));
+        }
+        for (OllamaEndpoint endpoint : endpoints) {
+            info.append("\n  ").append(endpoint.getDebugInfo());
+        }
+        return info.toString();
+    }
+}
@@ -0,0 +1,266 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decides when LLM requests may hit the inference servers.
+ * At most maxInFlight requests run at once (OllamaClient sizes it to the
+ * router's pool); the rest wait in a priority queue:
+ * player dialogue first, then speculative prefetch, then background generation.
+ * One slot is always kept free for the player, so a dialogue turn never waits
+ * behind background jobs. Queued work past its deadline is dropped, not sent.
+ */
+public class RequestScheduler {
+
+    /**
+     * Priority classes, highest first. The deadline is how long a request may
+     * sit in the queue before it is considered stale (0 = never).
+     */
+    public enum Priority {
+        PLAYER(0),
+        PREFETCH(3000),
+        BACKGROUND(60000);
+
+        public final long queueDeadlineMs;
+
+        Priority(long queueDeadlineMs) {
+            this.queueDeadlineMs = queueDeadlineMs;
+        }
+    }
+
+    // Slots that only PLAYER requests may use
+    private static final int RESERVED_PLAYER_SLOTS = 1;
+
+    private final int maxInFlight;
+    private final PriorityQueue<Job<?>> queue = new PriorityQueue<>(); // Guarded by "this"
+    private final Map<String, Job<?>> queuedByKey = new HashMap<>();   // For priority promotion
+    private int inFlight = 0;
+    private long nextSequence = 0;
+
+    // Statistics per priority class
+    private final int[] submitted = new int[Priority.values().length];
+    private final int[] started = new int[Priority.values().length];
+    private final int[] cancelled = new int[Priority.values().length];
+    private final int[] dropped = new int[Priority.values().length];
+    private final long[] totalQueueMillis = new long[Priority.values().length];
+
+    public RequestScheduler(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Queue a request with its class's default deadline
+     */
+    public <T> CompletableFuture<T> submit(String key, Priority priority, Supplier<CompletableFuture<T>> starter) {
+        long deadline = priority.queueDeadlineMs > 0 ? System.currentTimeMillis() + priority.queueDeadlineMs : 0;
+        return submit(key, priority, deadline, starter);
+    }
+
+    /**
+     * Queue a request. The starter runs once a slot is free; the returned future
+     * is the cancellation handle - cancelling it removes a queued request or
+     * cancels a running one. deadlineMillis is an absolute time (0 = none).
+     */
+    public <T> CompletableFuture<T> submit(String key, Priority priority, long deadlineMillis,
+                                           Supplier<CompletableFuture<T>> starter) {
+        Job<T> job = new Job<>(key, priority, deadlineMillis, starter);
+        synchronized (this) {
+            job.sequence = nextSequence++;
+            submitted[priority.ordinal()]++;
+            queue.add(job);
+            if (key != null) queuedByKey.put(key, job);
+        }
+
+        job.handle.whenComplete((result, error) -> {
+            if (job.handle.isCancelled()) {
+                jobCancelled(job);
+            }
+        });
+        dispatch();
+        return job.handle;
+    }
+
+    /**
+     * Raise a queued request's priority (e.g. the player now waits on a prefetch)
+     */
+    public void promote(String key, Priority priority) {
+        synchronized (this) {
+            Job<?> job = queuedByKey.get(key);
+            if (job == null || job.priority.ordinal() <= priority.ordinal()) return;
+            queue.remove(job);
+            job.priority = priority;
+            job.deadline = 0; // Someone is waiting for it now
+            queue.add(job);
+        }
+        dispatch();
+    }
+
+    /**
+     * True if nothing is running or waiting - background work can use the box.
+     * Stale queued work is dropped first, so it doesn't count as waiting.
+     */
+    public boolean isIdle() {
+        dispatch();
+        synchronized (this) {
+            return inFlight == 0 && queue.isEmpty();
+        }
+    }
+
+    /**
+     * Drop every queued job past its deadline, then start as many as the slots allow
+     */
+    private void dispatch() {
+        List<Job<?>> toStart = new ArrayList<>();
+        List<Job<?>> toDrop = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            // The whole queue, not just the head - a stale job behind a head that
+            // can't start yet would otherwise sit there and count as waiting work
+            queue.removeIf(job -> {
+                if (job.deadline == 0 || now <= job.deadline) return false;
+                forget(job);
+                dropped[job.priority.ordinal()]++;
+                toDrop.add(job);
+                return true;
+            });
+            while (!queue.isEmpty()) {
+                Job<?> next = queue.peek();
+                int limit = next.priority == Priority.PLAYER ? maxInFlight : maxInFlight - RESERVED_PLAYER_SLOTS;
+                if (inFlight >= Math.max(1, limit)) break;
+
+                queue.poll();
+                forget(next);
+                inFlight++;
+                started[next.priority.ordinal()]++;
+                totalQueueMillis[next.priority.ordinal()] += now - next.queuedAt;
+                toStart.add(next);
+            }
+        }
+
+        for (Job<?> job : toDrop) {
+            job.handle.completeExceptionally(new TimeoutException("Dropped stale " + job.priority + " request"));
+        }
+        for (Job<?> job : toStart) {
+            job.start(this::jobFinished);
+        }
+    }
+
+    private void forget(Job<?> job) {
+        if (job.key != null) queuedByKey.remove(job.key, job);
+    }
+
+    private void jobFinished(Job<?> job) {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    private void jobCancelled(Job<?> job) {
+        synchronized (this) {
+            if (!queue.remove(job)) return; // Running jobs free their slot in jobFinished
+            forget(job);
+            cancelled[job.priority.ordinal()]++;
+        }
+    }
+
+    // Statistics getters
+    public int getMaxInFlight() { return maxInFlight; }
+    public synchronized int getInFlight() { return inFlight; }
+    public int getQueued() {
+        dispatch(); // Sweep stale jobs first
+        synchronized (this) {
+            return queue.size();
+        }
+    }
+    public synchronized int getSubmitted(Priority priority) { return submitted[priority.ordinal()]; }
+    public synchronized int getStarted(Priority priority) { return started[priority.ordinal()]; }
+    public synchronized int getCancelled(Priority priority) { return cancelled[priority.ordinal()]; }
+    public synchronized int getDropped(Priority priority) { return dropped[priority.ordinal()]; }
+
+    /**
+     * Average time requests of a class waited for a slot
+     */
+    public synchronized long getAverageQueueMillis(Priority priority) {
+        int count = started[priority.ordinal()];
+        return count == 0 ? 0 : totalQueueMillis[priority.ordinal()] / count;
+    }
+
+    /**
+     * Get simple debug info about the scheduler
+     */
+    public synchronized String getDebugInfo() {
+        StringBuilder info = new StringBuilder(String.format("scheduler: %d/%d in flight, %d queued",
+            inFlight, maxInFlight, queue.size()));
+        for (Priority priority : Priority.values()) {
+            int i = priority.ordinal();
+            info.append(String.format("; %s %d started, %d cancelled, %d dropped, avg wait %d ms",
+                priority, started[i], cancelled[i], dropped[i], getAverageQueueMillis(priority)));
+        }
+        return info.toString();
+    }
+
+    /**
+     * One request waiting for (or holding) a slot
+     */
+    private static class Job<T> implements Comparable<Job<?>> {
+        final String key;
+        final Supplier<CompletableFuture<T>> starter;
+        final CompletableFuture<T> handle = new CompletableFuture<>();
+        final long queuedAt = System.currentTimeMillis();
+        Priority priority;
+        long deadline;
+        long sequence;
+
+        Job(String key, Priority priority, long deadline, Supplier<CompletableFuture<T>> starter) {
+            this.key = key;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.starter = starter;
+        }
+
+        void start(Consumer<Job<?>> onFinished) {
+            if (handle.isDone()) { // Cancelled between dispatch and now
+                onFinished.accept(this);
+                return;
+            }
+            CompletableFuture<T> request;
+            try {
+                request = starter.get();
+            } catch (RuntimeException e) {
+                handle.completeExceptionally(e);
+                onFinished.accept(this);
+                return;
+            }
+            request.whenComplete((result, error) -> {
+                onFinished.accept(this);
+                if (error != null) {
+                    handle.completeExceptionally(error);
+                } else {
+                    handle.complete(result);
+                }
+            });
+            handle.whenComplete((result, error) -> {
+                if (handle.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Job<?> other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority.ordinal(), other.priority.ordinal());
+            }
+            return Long.compare(sequence, other.sequence); // FIFO within a class
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.вувуеуdetective.game.ai;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache for AI answers so repeated prompts skip the model.
+ * Memory tier: bounded LRU with per-entry TTL. Disk tier (optional): one small
+ * JSON file per key that survives restarts. Each key keeps up to N different
+ * answers, so a cached greeting does not repeat the same line every time.
+ */
+public class ResponseCache {
+
+    private final int maxEntries;
+    private final long defaultTtlMillis;
+    private final int defaultVariants;
+
+    // Access-ordered LinkedHashMap = LRU; guarded by "this"
+    private final LinkedHashMap<String, Entry> memory;
+
+    // Disk tier - null when running memory-only
+    private final Path diskDirectory;
+    private final Set<String> keysOnDisk = ConcurrentHashMap.newKeySet();
+    private final ExecutorService diskExecutor;
+    private final ThreadLocal<Json> json = ThreadLocal.withInitial(() -> {
+        Json json = new Json(JsonWriter.OutputType.json);
+        json.setIgnoreUnknownFields(true);
+        return json;
+    });
+
+    // Statistics
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Memory-only cache
+     */
+    public ResponseCache(int maxEntries, long defaultTtlMillis, int defaultVariants) {
+        this(maxEntries, defaultTtlMillis, defaultVariants, null);
+    }
+
+    /**
+     * Cache with a disk tier in the given directory (created if missing)
+     */
+    public ResponseCache(int maxEntries, long defaultTtlMillis, int defaultVariants, Path diskDirectory) {
+        this.maxEntries = maxEntries;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.defaultVariants = Math.max(1, defaultVariants);
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+        this.diskDirectory = diskDirectory;
+
+        if (diskDirectory != null) {
+            diskExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "response-cache-disk");
+                thread.setDaemon(true);
+                return thread;
+            });
+            diskExecutor.execute(this::indexDisk);
+        } else {
+            diskExecutor = null;
+        }
+    }
+
+    /**
+     * Build a cache key from model name and prompt.
+     * Whitespace and case differences in the prompt map to the same key.
+     */
+    public static String key(String model, String prompt) {
+        String normalized = prompt.trim().replaceAll("\\s+", " ").toLowerCase();
+        return model + "|" + normalized;
+    }
+
+    /**
+     * Memory-only lookup. Returns null unless the key holds its full set of
+     * variants (until then the model is asked again to collect more).
+     */
+    public synchronized String get(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            memory.remove(key);
+            entry = null;
+        }
+        if (entry == null || !entry.isFull()) {
+            return null;
+        }
+        memoryHits.incrementAndGet();
+        return entry.nextVariant();
+    }
+
+    /**
+     * Any remembered answer for the key, even if the variant set isn't full yet.
+     * For stand-in lines when the model is slow - not counted as a hit or miss,
+     * and doesn't move the variant rotation along.
+     */
+    public synchronized String peekAny(String key) {
+        Entry entry = memory.get(key);
+        if (entry == null || entry.variants.isEmpty() || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.peekVariant();
+    }
+
+    /**
+     * Look through both tiers. Memory hits complete immediately, disk hits are
+     * read on the cache's own thread, so this is safe to call from the game thread.
+     * Completes with null on a miss.
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        String cached = get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (diskExecutor == null || !keysOnDisk.contains(key)) {
+            misses.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> loadFromDisk(key), diskExecutor);
+    }
+
+    /**
+     * Store an answer with the default TTL and variant count
+     */
+    public void put(String key, String text) {
+        put(key, text, defaultTtlMillis, defaultVariants);
+    }
+
+    /**
+     * Store an answer as one more variant for the key (up to maxVariants, after
+     * that the oldest one is replaced). A repeated answer isn't stored twice but
+     * still counts towards filling the entry - a model that always says the same
+     * thing would otherwise never get a cache hit. TTL and variant count apply to
+     * the whole entry and are set when the entry is first created.
+     */
+    public void put(String key, String text, long ttlMillis, int maxVariants) {
+        if (text == null || text.isEmpty()) return;
+
+        Entry snapshot;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Entry entry = memory.get(key);
+            if (entry == null || entry.isExpired(now)) {
+                entry = new Entry();
+                entry.key = key;
+                entry.expiresAt = now + ttlMillis;
+                entry.maxVariants = Math.max(1, maxVariants);
+                memory.put(key, entry);
+            }
+            entry.answers++;
+            if (!entry.variants.contains(text)) { // Same answer again adds no variety
+                if (entry.variants.size() >= entry.maxVariants) {
+                    entry.variants.remove(0);
+                }
+                entry.variants.add(text);
+            }
+            snapshot = entry.copy();
+        }
+
+        if (diskExecutor != null) {
+            keysOnDisk.add(key);
+            diskExecutor.execute(() -> saveToDisk(snapshot));
+        }
+    }
+
+    /**
+     * Drop everything from memory (disk files stay)
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+    }
+
+    // Statistics getters
+    public long getMemoryHits() { return memoryHits.get(); }
+    public long getDiskHits() { return diskHits.get(); }
+    public long getMisses() { return misses.get(); }
+    public synchronized int size() { return memory.size(); }
+
+    public float getHitRate() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    /**
+     * Get simple debug info about cache usage
+     */
+    public String getDebugInfo() {
+        return String.format("cache: %d entries, %d mem hits, %d disk hits, %d misses (%.0f%%)",
+            size(), getMemoryHits(), getDiskHits(), getMisses(), getHitRate() * 100);
+    }
+
+    // ----- Disk tier (runs on diskExecutor only) -----
+
+    /**
+     * Remember which keys exist on disk and delete expired files
+     */
+    private void indexDisk() {
+        try {
+            Files.createDirectories(diskDirectory);
+            long now = System.currentTimeMillis();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDirectory, "*.json")) {
+                for (Path file : files) {
+                    Entry entry = readEntry(file);
+                    if (entry == null || entry.isExpired(now)) {
+                        Files.deleteIfExists(file);
+                    } else {
+                        keysOnDisk.add(entry.key);
+                    }
+                }
+            }
+            System.out.println("Response cache: " + keysOnDisk.size() + " entries on disk");
+        } catch (IOException e) {
+            System.err.println("Response cache disk tier unavailable: " + e.getMessage());
+        }
+    }
+
+    private String loadFromDisk(String key) {
+        Entry entry = readEntry(fileFor(key));
+        if (entry == null || !key.equals(entry.key) || entry.isExpired(System.currentTimeMillis())) {
+            keysOnDisk.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        // Promote back into memory so the next lookup skips the disk - unless a
+        // put() got there while the file was read; that entry is newer
+        synchronized (this) {
+            Entry current = memory.get(key);
+            if (current != null && !current.isExpired(System.currentTimeMillis())) {
+                entry = current;
+            } else {
+                memory.put(key, entry);
+            }
+            if (!entry.isFull()) {
+                misses.incrementAndGet(); // Still collecting variants
+                return null;
+            }
+            diskHits.incrementAndGet();
+            return entry.nextVariant();
+        }
+    }
+
+    private void saveToDisk(Entry entry) {
+        try {
+            Files.createDirectories(diskDirectory);
+            Path file = fileFor(entry.key);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, json.get().toJson(entry, Entry.class).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Response cache write failed: " + e.getMessage());
+        }
+    }
+
+    private Entry readEntry(Path file) {
+        try {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            return json.get().fromJson(Entry.class, text);
+        } catch (Exception e) {
+            return null; // Missing or corrupt file = miss
+        }
+    }
+
+    /**
+     * Keys contain whole prompts, so file names use a hash of the key
+     */
+    private Path fileFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return diskDirectory.resolve(name + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-1 is always available
+        }
+    }
+
+    /**
+     * One cached key with its answer variants (public fields for Json)
+     */
+    public static class Entry {
+        public String key;
+        public long expiresAt;
+        public int maxVariants = 1;
+        public ArrayList<String> variants = new ArrayList<>();
+        public int answers; // Answers stored, repeats included
+        private transient int nextIndex;
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        boolean isFull() {
+            return Math.max(answers, variants.size()) >= maxVariants;
+        }
+
+        /**
+         * Rotate through variants so the same line is not given twice in a row
+         */
+        String nextVariant() {
+            String text = variants.get(nextIndex % variants.size());
+            nextIndex++;
+            return text;
+        }
+
+        /**
+         * The variant nextVariant() would give, without advancing
+         */
+        String peekVariant() {
+            return variants.get(nextIndex % variants.size());
+        }
+
+        Entry copy() {
+            Entry copy = new Entry();
+            copy.key = key;
+            copy.expiresAt = expiresAt;
+            copy.maxVariants = maxVariants;
+            copy.answers = answers;
+            copy.variants = new ArrayList<>(variants);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.вувуеуdetective.game.ai;
+
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Request coalescing: identical prompts that are already in flight share one
+ * upstream call. Every caller gets its own future (so one caller cancelling
+ * doesn't hurt the others) and streaming callers that join late first receive
+ * the text generated so far. The upstream call is only cancelled once every
+ * caller has given up.
+ */
+public class SingleFlight {
+
+    private final Map<String, Flight> inFlight = new HashMap<>(); // Guarded by "this"
+
+    // Statistics
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    /**
+     * Join the flight for key, starting it if nobody else has.
+     * The starter gets a token callback that fans out to every caller's onToken.
+     */
+    public CompletableFuture<OllamaResponse> join(String key, Consumer<String> onToken,
+                                                  Function<Consumer<String>, CompletableFuture<OllamaResponse>> starter) {
+        Flight flight;
+        Waiter waiter;
+        boolean leader;
+        do {
+            leader = false;
+            synchronized (this) {
+                flight = inFlight.get(key);
+                if (flight == null) {
+                    flight = new Flight(key);
+                    inFlight.put(key, flight);
+                    leader = true;
+                }
+            }
+            waiter = flight.addWaiter(onToken);
+        } while (waiter == null); // Flight was abandoned just now - start a new one
+
+        if (leader) {
+            upstreamCalls.incrementAndGet();
+            flight.start(starter);
+        } else {
+            coalescedCalls.incrementAndGet();
+        }
+        return waiter.result;
+    }
+
+    private synchronized void finished(Flight flight) {
+        inFlight.remove(flight.key, flight);
+    }
+
+    // Statistics getters
+    public long getUpstreamCalls() { return upstreamCalls.get(); }
+    public long getCoalescedCalls() { return coalescedCalls.get(); }
+    public synchronized int getInFlightCount() { return inFlight.size(); }
+
+    /**
+     * Model time the coalesced callers would have spent on their own calls
+     */
+    public long getEstimatedSavedMillis() { return savedMillis.get(); }
+
+    /**
+     * Get simple debug info about coalescing
+     */
+    public String getDebugInfo() {
+        return String.format("single-flight: %d upstream, %d coalesced, ~%d ms model time saved",
+            getUpstreamCalls(), getCoalescedCalls(), getEstimatedSavedMillis());
+    }
+
+    /**
+     * One caller waiting on a flight
+     */
+    private static class Waiter {
+        final CompletableFuture<OllamaResponse> result = new CompletableFuture<>();
+        final Consumer<String> onToken;
+
+        Waiter(Consumer<String> onToken) {
+            this.onToken = onToken;
+        }
+    }
+
+    /**
+     * One upstream request and everyone waiting for it
+     */
+    private class Flight {
+        final String key;
+        final long startTime = System.currentTimeMillis();
+        final List<Waiter> waiters = new ArrayList<>(); // Guarded by "this"
+        final StringBuilder textSoFar = new StringBuilder();
+        int joinedCount = 0;
+        CompletableFuture<OllamaResponse> upstream;
+        boolean abandoned = false; // Every waiter cancelled - upstream is (being) cancelled
+        boolean done = false;
+        OllamaResponse result;
+        Throwable resultError;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns null if the flight was abandoned and must not be joined
+         */
+        Waiter addWaiter(Consumer<String> onToken) {
+            Waiter waiter = new Waiter(onToken);
+            synchronized (this) {
+                if (abandoned) return null;
+                joinedCount++;
+                if (done) {
+                    // Finished between the map lookup and now - hand over the result directly
+                    if (resultError != null) {
+                        waiter.result.completeExceptionally(resultError);
+                    } else {
+                        if (onToken != null) onToken.accept(result.response);
+                        waiter.result.complete(result);
+                    }
+                    return waiter;
+                }
+                // Late streaming joiner catches up with what was already generated
+                if (onToken != null && textSoFar.length() > 0) {
+                    onToken.accept(textSoFar.toString());
+                }
+                waiters.add(waiter);
+            }
+            waiter.result.whenComplete((text, error) -> {
+                if (waiter.result.isCancelled()) {
+                    removeWaiter(waiter);
+                }
+            });
+            return waiter;
+        }
+
+        void start(Function<Consumer<String>, CompletableFuture<OllamaResponse>> starter) {
+            CompletableFuture<OllamaResponse> request = starter.apply(this::publishToken);
+            boolean cancelNow;
+            synchronized (this) {
+                upstream = request;
+                cancelNow = abandoned;
+            }
+            if (cancelNow) {
+                request.cancel(true);
+            }
+            request.whenComplete(this::complete);
+        }
+
+        synchronized void publishToken(String token) {
+            textSoFar.append(token);
+            for (Waiter waiter : waiters) {
+                if (waiter.onToken != null) {
+                    waiter.onToken.accept(token);
+                }
+            }
+        }
+
+        void removeWaiter(Waiter waiter) {
+            CompletableFuture<OllamaResponse> toCancel = null;
+            synchronized (this) {
+                waiters.remove(waiter);
+                if (done || !waiters.isEmpty()) return;
+                abandoned = true;
+                toCancel = upstream;
+            }
+            // Nobody is listening any more - stop the model and let the next caller start fresh
+            finished(this);
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+
+        void complete(OllamaResponse response, Throwable error) {
+            finished(this);
+
+            List<Waiter> toNotify;
+            boolean streamed;
+            synchronized (this) {
+                done = true;
+                result = response;
+                resultError = error;
+                toNotify = new ArrayList<>(waiters);
+                waiters.clear();
+                streamed = textSoFar.length() > 0;
+                if (error == null && joinedCount > 1) {
+                    savedMillis.addAndGet((System.currentTimeMillis() - startTime) * (joinedCount - 1));
+                }
+            }
+            for (Waiter waiter : toNotify) {
+                if (error != null) {
+                    waiter.result.completeExceptionally(error);
+                } else {
+                    // Streaming caller that joined a non-streaming flight gets the text in one piece
+                    if (!streamed && waiter.onToken != null) waiter.onToken.accept(response.response);
+                    waiter.result.complete(response);
+                }
+            }
+        }
+    }
+}
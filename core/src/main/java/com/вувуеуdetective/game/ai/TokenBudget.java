@@ -0,0 +1,130 @@
+package com.вувуеуdetective.game.ai;
+
+/**
+ * Token bucket for optional model work, measured in LLM tokens (prompt + generated).
+ * A request reserves its estimated size up front and settles the real count from
+ * Ollama's eval counters afterwards; going over the estimate leaves the bucket in
+ * debt, which delays the next request. Utilization over the last minute shows how
+ * much of the budget is actually used, for tuning the rate on a given machine.
+ */
+public class TokenBudget {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private double tokensPerSecond;
+    private double capacity;     // Largest burst, in tokens
+    private double available;    // May go negative after an underestimate
+    private long lastRefillNanos;
+
+    // Tokens spent per second over the last minute (ring buffer, one slot per second)
+    private final long[] spentPerSecond = new long[WINDOW_SECONDS];
+    private long currentSecond;
+    private final long startNanos;
+
+    // Statistics
+    private long granted = 0;
+    private long refused = 0;
+    private long totalSpent = 0;
+    private long totalEstimated = 0;
+
+    /**
+     * @param tokensPerSecond sustained rate
+     * @param burstSeconds    how many seconds of unused budget may be saved up
+     */
+    public TokenBudget(double tokensPerSecond, double burstSeconds) {
+        this.startNanos = System.nanoTime();
+        this.lastRefillNanos = startNanos;
+        this.currentSecond = 0;
+        setRate(tokensPerSecond, burstSeconds);
+        this.available = capacity;
+    }
+
+    /**
+     * Change the budget at runtime; saved-up tokens are capped to the new burst size
+     */
+    public synchronized void setRate(double tokensPerSecond, double burstSeconds) {
+        refill();
+        this.tokensPerSecond = Math.max(0, tokensPerSecond);
+        this.capacity = Math.max(1, this.tokensPerSecond * burstSeconds);
+        this.available = Math.min(available, capacity);
+    }
+
+    /**
+     * Take tokens for a request if the bucket has them. Estimates bigger than
+     * the whole bucket are allowed once it is full, so nothing starves forever.
+     */
+    public synchronized boolean tryReserve(long estimatedTokens) {
+        refill();
+        long needed = (long) Math.min(estimatedTokens, capacity);
+        if (available < needed) {
+            refused++;
+            return false;
+        }
+        available -= estimatedTokens;
+        granted++;
+        totalEstimated += estimatedTokens;
+        return true;
+    }
+
+    /**
+     * Correct a reservation with the tokens the request really used
+     * (0 for a request that failed before reaching the model)
+     */
+    public synchronized void settle(long reservedTokens, long actualTokens) {
+        refill();
+        available = Math.min(capacity, available + reservedTokens - actualTokens);
+        totalSpent += actualTokens;
+        spentPerSecond[(int) (currentSecond % WINDOW_SECONDS)] += actualTokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefillNanos) / 1e9 * tokensPerSecond);
+        lastRefillNanos = now;
+
+        // Clear the window slots of the seconds that passed without spending
+        long second = (now - startNanos) / 1_000_000_000L;
+        for (long s = currentSecond + 1; s <= second && s <= currentSecond + WINDOW_SECONDS; s++) {
+            spentPerSecond[(int) (s % WINDOW_SECONDS)] = 0;
+        }
+        currentSecond = Math.max(currentSecond, second);
+    }
+
+    /**
+     * Tokens per second actually spent over the last minute
+     */
+    public synchronized double getRecentRate() {
+        refill();
+        long sum = 0;
+        for (long spent : spentPerSecond) {
+            sum += spent;
+        }
+        double seconds = Math.min(WINDOW_SECONDS, Math.max(1, currentSecond + 1));
+        return sum / seconds;
+    }
+
+    /**
+     * Share of the budget used over the last minute (can exceed 1 briefly after a burst)
+     */
+    public synchronized double getUtilization() {
+        return tokensPerSecond == 0 ? 0 : getRecentRate() / tokensPerSecond;
+    }
+
+    // Statistics getters
+    public synchronized double getTokensPerSecond() { return tokensPerSecond; }
+    public synchronized double getAvailable() { refill(); return available; }
+    public synchronized long getGranted() { return granted; }
+    public synchronized long getRefused() { return refused; }
+    public synchronized long getTotalSpent() { return totalSpent; }
+    public synchronized long getTotalEstimated() { return totalEstimated; }
+
+    /**
+     * Get simple debug info about the budget
+     */
+    public synchronized String getDebugInfo() {
+        return String.format("budget %.0f tok/s: %.1f tok/s used (%.0f%%), %.0f/%.0f available, " +
+                "%d granted, %d refused, %d tokens spent (%d estimated)",
+            tokensPerSecond, getRecentRate(), getUtilization() * 100, Math.max(0, available), capacity,
+            granted, refused, totalSpent, totalEstimated);
+    }
+}
@@ -1,129 +1,43 @@
 package com.вувуеуdetective.game.entities;
 
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.MathUtils;
-import com.вувуеуdetective.game.world.SimpleMap;
 
 /**
  * Non-Player Character (NPC) - villagers, suspects, witnesses
- * This is a placeholder before AI integration
+ * A thin view of one entry in an NpcStore, which holds the actual state
  */
 public class NPC {
     
-    // NPC position (in world coordinates)
-    private float x, y;
+    private final NpcStore store;
+    private final int index;
     
-    // NPC properties
-    private static final float RADIUS = 10f;
-    private static final float MOVE_SPEED = 50f; // Slower than player
-    
-    // Movement AI variables
-    private float moveTimer = 0f;
-    private float moveDirection = 0f; // 0=right, 1=up, 2=left, 3=down
-    private boolean isMoving = false;
-    
-    // NPC info
-    private String name;
-    private Color color;
-    
-    // Reference to map for collision detection
-    private SimpleMap map;
-    
-    public NPC(float startX, float startY, String name, Color color, SimpleMap map) {
-        this.x = startX;
-        this.y = startY;
-        this.name = name;
-        this.color = color;
-        this.map = map;
-        
-        // Random initial state
-        this.moveTimer = MathUtils.random(0f, 3f);
-        this.moveDirection = MathUtils.random(0, 3);
+    NPC(NpcStore store, int index) {
+        this.store = store;
+        this.index = index;
     }
     
     /**
      * Update NPC - handles AI movement and behavior
      */
     public void update(float deltaTime) {
-        // Simple AI: Move randomly, then stop, then move again
-        moveTimer -= deltaTime;
-        
-        if (moveTimer <= 0f) {
-            // Time to change behavior
-            if (isMoving) {
-                // Stop moving
-                isMoving = false;
-                moveTimer = MathUtils.random(1f, 3f); // Stand still for 1-3 seconds
-            } else {
-                // Start moving
-                isMoving = true;
-                moveDirection = MathUtils.random(0, 3); // Pick random direction
-                moveTimer = MathUtils.random(0.5f, 2f); // Move for 0.5-2 seconds
-            }
-        }
-        
-        // Move if supposed to be moving
-        if (isMoving) {
-            moveInDirection(deltaTime, moveDirection);
-        }
-    }
-    
-    /**
-     * Move NPC in specified direction with collision detection
-     */
-    private void moveInDirection(float deltaTime, float direction) {
-        float newX = x;
-        float newY = y;
-        
-        // Calculate movement based on direction
-        switch ((int)direction) {
-            case 0: // Right
-                newX += MOVE_SPEED * deltaTime;
-                break;
-            case 1: // Up  
-                newY += MOVE_SPEED * deltaTime;
-                break;
-            case 2: // Left
-                newX -= MOVE_SPEED * deltaTime;
-                break;
-            case 3: // Down
-                newY -= MOVE_SPEED * deltaTime;
-                break;
-        }
-        
-        // Check collision - only move if destination is walkable
-        int tileX = map.worldToTileX(newX);
-        int tileY = map.worldToTileY(newY);
-        
-        if (map.isWalkable(tileX, tileY)) {
-            x = newX;
-            y = newY;
-        } else {
-            // Hit a wall - stop moving and pick new direction soon
-            isMoving = false;
-            moveTimer = MathUtils.random(0.2f, 0.5f);
-        }
+        store.update(index, deltaTime);
     }
     
     /**
      * Render NPC as colored circle
      */
     public void render(ShapeRenderer shapeRenderer) {
-        shapeRenderer.setColor(color);
-        shapeRenderer.circle(x, y, RADIUS);
-        
-        // Add a small white dot in center to show it's an NPC
-        shapeRenderer.setColor(Color.WHITE);
-        shapeRenderer.circle(x, y, 2f);
+        store.render(index, shapeRenderer);
     }
     
     /**
      * Check if player is close enough to interact with this NPC
      */
     public boolean isPlayerNearby(float playerX, float playerY, float interactionDistance) {
-        float distance = (float) Math.sqrt((x - playerX) * (x - playerX) + (y - playerY) * (y - playerY));
-        return distance <= interactionDistance;
+        float dx = getX() - playerX;
+        float dy = getY() - playerY;
+        return dx * dx + dy * dy <= interactionDistance * interactionDistance;
     }
     
     /**
@@ -144,14 +58,38 @@ public class NPC {
     }
     
     // Getters
-    public float getX() { return x; }
-    public float getY() { return y; }
-    public String getName() { return name; }
-    public float getRadius() { return RADIUS; }
+    public float getX() { return store.getX(index); }
+    public float getY() { return store.getY(index); }
+    public String getName() { return store.getName(index); }
+    public float getRadius() { return NpcStore.RADIUS; }
+    public int getIndex() { return index; }
     
     // Setters
     public void setPosition(float x, float y) {
-        this.x = x;
-        this.y = y;
+        store.setPosition(index, x, y);
+    }
+
+    /**
+     * Walk to a tile (e.g. the inn), then wander again. Ignored outside the map.
+     */
+    public void walkTo(int tileX, int tileY) {
+        store.setGoal(index, tileX, tileY);
+    }
+
+    public boolean isWalking() {
+        return store.hasGoal(index);
+    }
+    
+    // Views of the same NPC are interchangeable (e.g. as map keys)
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof NPC)) return false;
+        NPC npc = (NPC) other;
+        return npc.store == store && npc.index == index;
+    }
+    
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(store) * 31 + index;
     }
 }
@@ -0,0 +1,173 @@
+package com.вувуеуdetective.game.entities;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import com.вувуеуdetective.game.world.SimpleMap;
+
+import java.util.Arrays;
+
+/**
+ * Level of detail for NPC ticks, by distance from the camera view:
+ *
+ * - NEAR (in view, or about to be): ticked every frame
+ * - MID (a few chunks further): ticked every MID_INTERVAL frames with the
+ *   time they missed, staggered so each frame ticks a share of them
+ * - FAR (everyone else): asleep, not looked at at all. When a sleeper comes
+ *   back into mid range it is fast-forwarded over the time it slept
+ *
+ * Near and mid NPCs are found through the store's SpatialGrid, so a frame
+ * costs what is around the camera, not the size of the crowd.
+ */
+public class NpcLodScheduler {
+
+    public static final int NEAR = 0;
+    public static final int MID = 1;
+    public static final int FAR = 2;
+
+    private static final int CHUNK_PIXELS = SimpleMap.CHUNK_SIZE * SimpleMap.TILE_SIZE;
+    private static final float NEAR_MARGIN = CHUNK_PIXELS;     // Beyond the view edge
+    private static final float MID_MARGIN = 2 * CHUNK_PIXELS;
+    private static final int MID_INTERVAL = 4;                 // Frames between mid ticks
+    private static final float MAX_FAST_FORWARD_SECONDS = 120; // Longer sleeps are forgotten - a walk is a walk
+
+    private final NpcStore store;
+
+    // Per NPC (store index)
+    private byte[] tier = new byte[0];
+    private long[] lastSeenFrame = new long[0];
+    private double[] sleptAt = new double[0]; // Game time the NPC fell asleep
+
+    private IntArray awake = new IntArray();     // Near or mid at the last update
+    private IntArray nextAwake = new IntArray();
+    private final IntArray hits = new IntArray();
+    private int[] tickList = new int[64];
+
+    private long frame = 0;
+    private double time = 0;
+
+    // Statistics
+    private int nearCount = 0;
+    private int midCount = 0;
+    private int farCount = 0;
+    private long ticks = 0;            // NPC ticks run
+    private long fullTicks = 0;        // NPC ticks an every-frame update would have run
+    private long wakeUps = 0;
+    private long fastForwardSegments = 0;
+    private long lastUpdateNanos = 0;
+
+    public NpcLodScheduler(NpcStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Advance all NPCs by a frame, given the world rectangle the camera shows
+     */
+    public void update(float deltaTime, Rectangle view) {
+        long start = System.nanoTime();
+        frame++;
+        time += deltaTime;
+        ensureCapacity();
+
+        float nearMinX = view.x - NEAR_MARGIN, nearMinY = view.y - NEAR_MARGIN;
+        float nearMaxX = view.x + view.width + NEAR_MARGIN, nearMaxY = view.y + view.height + NEAR_MARGIN;
+        hits.clear();
+        store.getGrid().queryRect(view.x - MID_MARGIN, view.y - MID_MARGIN,
+            view.x + view.width + MID_MARGIN, view.y + view.height + MID_MARGIN, hits);
+
+        int near = 0, mid = 0, n = 0;
+        if (tickList.length < hits.size) tickList = new int[Math.max(hits.size, tickList.length * 2)];
+        nextAwake.clear();
+        for (int k = 0; k < hits.size; k++) {
+            int i = hits.items[k];
+            if (tier[i] == FAR) {
+                // Back in range - catch up on the time it slept
+                float slept = (float) Math.min(MAX_FAST_FORWARD_SECONDS, time - deltaTime - sleptAt[i]);
+                fastForwardSegments += store.fastForward(i, Math.max(0f, slept));
+                wakeUps++;
+            }
+            lastSeenFrame[i] = frame;
+            nextAwake.add(i);
+
+            store.addPendingDelta(i, deltaTime);
+            float x = store.getX(i), y = store.getY(i);
+            if (x >= nearMinX && x <= nearMaxX && y >= nearMinY && y <= nearMaxY) {
+                tier[i] = NEAR;
+                near++;
+                tickList[n++] = i;
+            } else {
+                tier[i] = MID;
+                mid++;
+                if ((i + frame) % MID_INTERVAL == 0) tickList[n++] = i; // Staggered: a quarter per frame
+            }
+        }
+
+        // Whoever left mid range falls asleep (keeping the time it hadn't ticked yet)
+        for (int k = 0; k < awake.size; k++) {
+            int i = awake.items[k];
+            if (lastSeenFrame[i] == frame) continue;
+            tier[i] = FAR;
+            sleptAt[i] = time - store.takePendingDelta(i);
+        }
+        IntArray swap = awake;
+        awake = nextAwake;
+        nextAwake = swap;
+
+        store.tick(tickList, n);
+        // Fast-forwards moved NPCs outside the tick list - let the grid catch up with them too
+        store.flushMoves(hits);
+
+        nearCount = near;
+        midCount = mid;
+        farCount = store.size() - near - mid;
+        ticks += n;
+        fullTicks += store.size();
+        lastUpdateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * New NPCs start asleep; they wake up when the camera gets close
+     */
+    private void ensureCapacity() {
+        int size = store.size();
+        if (tier.length >= size) return;
+        int old = tier.length;
+        int capacity = Math.max(size, old * 2);
+        tier = Arrays.copyOf(tier, capacity);
+        lastSeenFrame = Arrays.copyOf(lastSeenFrame, capacity);
+        sleptAt = Arrays.copyOf(sleptAt, capacity);
+        for (int i = old; i < capacity; i++) {
+            tier[i] = FAR;
+            sleptAt[i] = time;
+        }
+    }
+
+    /**
+     * Tier of an NPC at the last update
+     */
+    public int getTier(int index) {
+        return index < tier.length ? tier[index] : FAR;
+    }
+
+    // Statistics getters
+    public int getNearCount() { return nearCount; }
+    public int getMidCount() { return midCount; }
+    public int getFarCount() { return farCount; }
+    public long getWakeUps() { return wakeUps; }
+    public long getLastUpdateMicros() { return lastUpdateNanos / 1000; }
+
+    /**
+     * Share of NPC ticks skipped compared to ticking everyone every frame (0..1)
+     */
+    public double getTicksSaved() {
+        return fullTicks == 0 ? 0 : 1.0 - (double) ticks / fullTicks;
+    }
+
+    /**
+     * Get simple debug info about NPC levels of detail
+     */
+    public String getDebugInfo() {
+        return String.format("npc lod: %d near, %d mid, %d asleep; %.1f%% of ticks saved, %d wake-ups (%.1f segments each), last frame %d us",
+            nearCount, midCount, farCount, getTicksSaved() * 100, wakeUps,
+            wakeUps == 0 ? 0.0 : (double) fastForwardSegments / wakeUps, getLastUpdateMicros());
+    }
+}
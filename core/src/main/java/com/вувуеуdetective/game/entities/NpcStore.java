@@ -0,0 +1,626 @@
+package com.вувуеуdetective.game.entities;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+import com.вувуеуdetective.game.world.FlowField;
+import com.вувуеуdetective.game.world.Navigation;
+import com.вувуеуdetective.game.world.SimpleMap;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+
+/**
+ * All NPCs in parallel primitive arrays (structure of arrays): NPC i is
+ * x[i], y[i], moveTimer[i]... Updating and drawing a crowd is a tight loop
+ * over a few flat arrays instead of a virtual call per heap object, so tens
+ * of thousands of wandering villagers fit in a frame. NPC is a thin view of
+ * one index for code that deals with single characters (dialogue, AI).
+ * Every move is mirrored into a SpatialGrid, which answers proximity queries
+ * without looking at the whole crowd.
+ *
+ * Big crowds tick in parallel: the index range is split into fork-join
+ * partitions, each NPC only writes its own slots, and the map is only read.
+ * Every NPC draws from its own random stream (seeded from the store seed and
+ * its index), so a tick gives bit-identical results however it is split - or
+ * not split at all. Grid updates are applied afterwards, one by one.
+ *
+ * An NPC given a goal walks there instead of wandering: it follows the
+ * destination's shared flow field, or an A* path while it is further away
+ * than the field reaches. Routes are refreshed or planned on the calling
+ * thread before a tick; during the tick they are only read.
+ *
+ * Not thread-safe otherwise; used from the game thread.
+ */
+public class NpcStore {
+
+    static final float RADIUS = 10f;
+    static final float MOVE_SPEED = 50f; // Slower than player
+
+    // Directions
+    private static final int RIGHT = 0;
+    private static final int UP = 1;
+    private static final int LEFT = 2;
+    private static final int DOWN = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Parallel ticks: fewer NPCs than this aren't worth the fork-join overhead
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int PARTITION_SIZE = 2048;
+
+    // Path searches started per tick at most - the rest of a crowd sent off at once waits a frame or two
+    private static final int MAX_SEARCHES_PER_TICK = 8;
+
+    private final SimpleMap map; // For collision detection, shared by everyone (read-only while ticking)
+    private final Navigation navigation;
+    private final long seed;
+    private boolean parallel = true;
+
+    private int count = 0;
+    private float[] x = new float[INITIAL_CAPACITY];
+    private float[] y = new float[INITIAL_CAPACITY];
+    private float[] moveTimer = new float[INITIAL_CAPACITY];
+    private byte[] direction = new byte[INITIAL_CAPACITY];
+    private boolean[] moving = new boolean[INITIAL_CAPACITY];
+    private int[] color = new int[INITIAL_CAPACITY];       // RGBA8888
+    private String[] name = new String[INITIAL_CAPACITY];  // null for anonymous crowd villagers
+    private long[] random = new long[INITIAL_CAPACITY];    // Per-NPC random stream state
+    private float[] pendingDelta = new float[INITIAL_CAPACITY]; // Time passed but not ticked yet
+    private boolean[] moved = new boolean[INITIAL_CAPACITY]; // Grid update pending
+    private int[] tickList = new int[INITIAL_CAPACITY];     // Scratch for update()
+    private FlowField[] goal = new FlowField[INITIAL_CAPACITY]; // Where the NPC is walking to, null while wandering
+    private int[][] path = new int[INITIAL_CAPACITY][];     // A* route (tile indices) while outside the goal's field
+    private int[] pathStep = new int[INITIAL_CAPACITY];     // Next route tile
+
+    private final SpatialGrid grid = new SpatialGrid();
+    private final IntArray scratchHits = new IntArray();
+    private final IntPredicate interactable = i -> name[i] != null; // Named NPCs can be talked to
+    private final Color scratchColor = new Color();
+    private final IntArray scratchPath = new IntArray();
+    private int searchesLeft = MAX_SEARCHES_PER_TICK;
+
+    // Statistics
+    private int lastUpdated = 0;
+    private long lastUpdateNanos = 0;
+
+    /**
+     * Store with a random seed - a different crowd every run
+     */
+    public NpcStore(SimpleMap map) {
+        this(map, MathUtils.random.nextLong());
+    }
+
+    /**
+     * Store whose NPCs behave the same in every run with the same seed (and the same add() calls)
+     */
+    public NpcStore(SimpleMap map, long seed) {
+        this.map = map;
+        this.seed = seed;
+        this.navigation = new Navigation(map);
+    }
+
+    /**
+     * Add an NPC and return its index (indices never change)
+     */
+    public int add(float startX, float startY, String npcName, Color npcColor) {
+        if (count == x.length) grow();
+        int i = count++;
+        x[i] = startX;
+        y[i] = startY;
+        name[i] = npcName;
+        color[i] = Color.rgba8888(npcColor);
+        random[i] = mix(seed + i * GOLDEN_GAMMA);
+
+        // Random initial state
+        moveTimer[i] = randomFloat(i, 0f, 3f);
+        direction[i] = (byte) randomInt(i, 4);
+        moving[i] = false;
+        grid.add(i, startX, startY);
+        return i;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        moveTimer = Arrays.copyOf(moveTimer, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        moving = Arrays.copyOf(moving, capacity);
+        color = Arrays.copyOf(color, capacity);
+        name = Arrays.copyOf(name, capacity);
+        random = Arrays.copyOf(random, capacity);
+        pendingDelta = Arrays.copyOf(pendingDelta, capacity);
+        moved = Arrays.copyOf(moved, capacity);
+        goal = Arrays.copyOf(goal, capacity);
+        path = Arrays.copyOf(path, capacity);
+        pathStep = Arrays.copyOf(pathStep, capacity);
+    }
+
+    // SplitMix64 - one independent stream per NPC, a few arithmetic ops per number
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private long nextRandom(int i) {
+        return mix(random[i] += GOLDEN_GAMMA);
+    }
+
+    private float randomFloat(int i, float min, float max) {
+        return min + (nextRandom(i) >>> 40) * 0x1.0p-24f * (max - min);
+    }
+
+    private int randomInt(int i, int bound) {
+        return (int) (((nextRandom(i) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * View of one NPC
+     */
+    public NPC view(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("No NPC " + index);
+        return new NPC(this, index);
+    }
+
+    /**
+     * Update every NPC standing inside the world rectangle; the rest wait
+     */
+    public void update(float deltaTime, float minX, float minY, float maxX, float maxY) {
+        if (tickList.length < count) tickList = new int[x.length];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            float px = x[i];
+            float py = y[i];
+            if (px < minX || px > maxX || py < minY || py > maxY) continue;
+            pendingDelta[i] += deltaTime;
+            tickList[n++] = i;
+        }
+        tick(tickList, n);
+    }
+
+    /**
+     * Update every NPC
+     */
+    public void update(float deltaTime) {
+        update(deltaTime, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Update one NPC (e.g. through its view)
+     */
+    void update(int i, float deltaTime) {
+        pendingDelta[i] += deltaTime;
+        if (goal[i] != null) planRoute(i);
+        tick(i);
+        if (moved[i]) {
+            moved[i] = false;
+            grid.move(i, x[i], y[i]);
+        }
+    }
+
+    /**
+     * Tick the listed NPCs by their pending time - on all cores for big lists
+     */
+    void tick(int[] indices, int n) {
+        long start = System.nanoTime();
+        // Fields and paths are shared - get them ready here, the tick only reads them
+        for (int k = 0; k < n; k++) {
+            if (goal[indices[k]] != null) planRoute(indices[k]);
+        }
+        searchesLeft = MAX_SEARCHES_PER_TICK;
+
+        if (parallel && n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(new TickTask(indices, 0, n));
+        } else {
+            tick(indices, 0, n);
+        }
+
+        // The grid is not thread-safe: apply the moves one by one afterwards
+        for (int k = 0; k < n; k++) {
+            int i = indices[k];
+            if (moved[i]) {
+                moved[i] = false;
+                grid.move(i, x[i], y[i]);
+            }
+        }
+        lastUpdated = n;
+        lastUpdateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Tick indices[from, to). Safe to run on several ranges at once.
+     */
+    private void tick(int[] indices, int from, int to) {
+        for (int k = from; k < to; k++) {
+            tick(indices[k]);
+        }
+    }
+
+    /**
+     * Simple AI: move randomly, then stop, then move again - over the NPC's
+     * pending time. Only touches slot i (and reads the map).
+     */
+    private void tick(int i) {
+        float deltaTime = pendingDelta[i];
+        pendingDelta[i] = 0;
+        if (goal[i] != null) {
+            // Under a tile per step, so a long frame doesn't cut through a corner
+            float maxStep = WALK_PROBE / MOVE_SPEED;
+            for (; deltaTime > maxStep; deltaTime -= maxStep) {
+                if (!seek(i, maxStep) || goal[i] == null) return;
+            }
+            seek(i, deltaTime);
+            return;
+        }
+        float timer = moveTimer[i] - deltaTime;
+
+        if (timer <= 0f) {
+            // Time to change behavior
+            timer = nextBehaviour(i);
+        }
+
+        // Move if supposed to be moving
+        if (moving[i]) {
+            float newX = x[i];
+            float newY = y[i];
+            float step = MOVE_SPEED * deltaTime;
+            switch (direction[i]) {
+                case RIGHT: newX += step; break;
+                case UP: newY += step; break;
+                case LEFT: newX -= step; break;
+                case DOWN: newY -= step; break;
+            }
+
+            // Check collision - only move if destination is walkable
+            if (map.isWalkable(map.worldToTileX(newX), map.worldToTileY(newY))) {
+                x[i] = newX;
+                y[i] = newY;
+                moved[i] = true;
+            } else {
+                // Hit a wall - stop moving and pick new direction soon
+                timer = hitWall(i);
+            }
+        }
+        moveTimer[i] = timer;
+    }
+
+    /**
+     * Moving NPCs stop, standing ones start walking somewhere; returns the new timer
+     */
+    private float nextBehaviour(int i) {
+        if (moving[i]) {
+            // Stop moving
+            moving[i] = false;
+            return randomFloat(i, 1f, 3f); // Stand still for 1-3 seconds
+        }
+        // Start moving
+        moving[i] = true;
+        direction[i] = (byte) randomInt(i, 4); // Pick random direction
+        return randomFloat(i, 0.5f, 2f); // Move for 0.5-2 seconds
+    }
+
+    private float hitWall(int i) {
+        moving[i] = false;
+        return randomFloat(i, 0.2f, 0.5f);
+    }
+
+    /**
+     * Walk NPC i to a tile, then go back to wandering. NPCs sent to the same
+     * tile share one flow field. Ignored for tiles outside the map.
+     */
+    public void setGoal(int i, int tileX, int tileY) {
+        if (!navigation.isInside(tileX, tileY)) {
+            System.err.println("Ignoring goal " + tileX + "," + tileY + " outside the map");
+            return;
+        }
+        goal[i] = navigation.fieldTo(tileX, tileY);
+        path[i] = null;
+    }
+
+    /**
+     * Forget NPC i's goal - it wanders from where it stands
+     */
+    public void clearGoal(int i) {
+        goal[i] = null;
+        path[i] = null;
+    }
+
+    public boolean hasGoal(int i) {
+        return goal[i] != null;
+    }
+
+    /**
+     * Make sure NPC i knows its way for the next tick: refresh its field, and
+     * plan an A* path if it stands where the field doesn't lead. Gives up the
+     * goal if there is no way there. Game thread only.
+     */
+    private void planRoute(int i) {
+        FlowField field = goal[i];
+        navigation.refresh(field);
+        int tileX = map.worldToTileX(x[i]);
+        int tileY = map.worldToTileY(y[i]);
+        if (field.distanceAt(tileX, tileY) != FlowField.UNREACHABLE) {
+            path[i] = null; // The field leads the way from here
+            return;
+        }
+        if (path[i] != null && pathStep[i] < path[i].length) return; // Still on its route
+        if (searchesLeft == 0) return; // Waits for a later tick
+        searchesLeft--;
+        if (navigation.findPath(tileX, tileY, field.getGoalX(), field.getGoalY(), scratchPath)) {
+            path[i] = scratchPath.toArray();
+            pathStep[i] = 0;
+        } else {
+            clearGoal(i);
+        }
+    }
+
+    /**
+     * Walk towards the goal along the field or path for deltaTime; false if
+     * the NPC couldn't move (arrived, blocked or waiting for a route).
+     * Only touches slot i.
+     */
+    private boolean seek(int i, float deltaTime) {
+        int tileX = map.worldToTileX(x[i]);
+        int tileY = map.worldToTileY(y[i]);
+        FlowField field = goal[i];
+        int distance = field.distanceAt(tileX, tileY);
+        if (distance == 0) {
+            // Arrived - look around for a bit, then wander
+            clearGoal(i);
+            moving[i] = false;
+            moveTimer[i] = randomFloat(i, 1f, 3f);
+            return false;
+        }
+        int step = distance != FlowField.UNREACHABLE ? field.directionAt(tileX, tileY) : nextPathStep(i, tileX, tileY);
+        if (step == FlowField.NONE) {
+            moving[i] = false;
+            return false;
+        }
+
+        // Along the step direction, drifting to the middle of the tile row or column
+        float distanceLeft = MOVE_SPEED * deltaTime;
+        float newX = x[i];
+        float newY = y[i];
+        float centerX = map.tileToWorldX(tileX) + SimpleMap.TILE_SIZE / 2f;
+        float centerY = map.tileToWorldY(tileY) + SimpleMap.TILE_SIZE / 2f;
+        switch (step) {
+            case RIGHT: newX += distanceLeft; newY += drift(newY, centerY, distanceLeft); break;
+            case UP: newY += distanceLeft; newX += drift(newX, centerX, distanceLeft); break;
+            case LEFT: newX -= distanceLeft; newY += drift(newY, centerY, distanceLeft); break;
+            case DOWN: newY -= distanceLeft; newX += drift(newX, centerX, distanceLeft); break;
+        }
+        direction[i] = (byte) step;
+        if (!map.isWalkable(map.worldToTileX(newX), map.worldToTileY(newY))) {
+            // The map changed under the route - plan again next tick
+            path[i] = null;
+            moving[i] = false;
+            return false;
+        }
+        x[i] = newX;
+        y[i] = newY;
+        moving[i] = true;
+        moved[i] = true;
+        return true;
+    }
+
+    private static float drift(float from, float to, float maxDistance) {
+        return Math.max(-maxDistance, Math.min(maxDistance, to - from));
+    }
+
+    /**
+     * Direction to the next tile of NPC i's path, NONE without one
+     */
+    private int nextPathStep(int i, int tileX, int tileY) {
+        int[] route = path[i];
+        if (route == null) return FlowField.NONE;
+        int width = map.getWidth();
+        int here = tileY * width + tileX;
+        while (pathStep[i] < route.length && route[pathStep[i]] == here) pathStep[i]++;
+        if (pathStep[i] >= route.length) return FlowField.NONE;
+        int next = route[pathStep[i]];
+        int nextX = next % width;
+        int nextY = next / width;
+        if (nextX > tileX) return RIGHT;
+        if (nextX < tileX) return LEFT;
+        return nextY > tileY ? UP : DOWN;
+    }
+
+    /**
+     * Advance an NPC by a long stretch of time in one go (it was asleep far
+     * away): instead of one step per frame, each walk or pause is applied
+     * whole, checking the tiles along a walk for walls. Lands where a per-frame
+     * simulation could have, not exactly where it would have. Returns the
+     * number of behaviour segments it took.
+     */
+    int fastForward(int i, float seconds) {
+        float remaining = seconds + pendingDelta[i];
+        pendingDelta[i] = 0;
+        int segments = 0;
+        // Heading somewhere: walk the route half a tile at a time
+        while (remaining > 0f && goal[i] != null) {
+            segments++;
+            planRoute(i);
+            if (goal[i] == null) break;
+            float step = Math.min(remaining, WALK_PROBE / MOVE_SPEED);
+            if (!seek(i, step) && goal[i] != null) {
+                remaining = 0f; // Blocked or waiting for a route - the rest of the time is lost
+                break;
+            }
+            remaining -= step;
+        }
+        while (remaining > 0f) {
+            segments++;
+            float segment = Math.min(moveTimer[i], remaining);
+            if (moving[i]) {
+                float walked = walk(i, segment);
+                if (walked < segment) { // Hit a wall, new timer already set
+                    remaining -= walked;
+                    continue;
+                }
+            }
+            remaining -= segment;
+            moveTimer[i] -= segment;
+            if (moveTimer[i] <= 0f) {
+                moveTimer[i] = nextBehaviour(i);
+            }
+        }
+        return segments;
+    }
+
+    // Largest straight move checked at once - under a tile, so no wall is skipped
+    private static final float WALK_PROBE = SimpleMap.TILE_SIZE / 2f;
+
+    /**
+     * Walk in the current direction for up to seconds; returns the time walked
+     */
+    private float walk(int i, float seconds) {
+        float dx = 0, dy = 0;
+        switch (direction[i]) {
+            case RIGHT: dx = 1; break;
+            case UP: dy = 1; break;
+            case LEFT: dx = -1; break;
+            case DOWN: dy = -1; break;
+        }
+        float distance = MOVE_SPEED * seconds;
+        float walked = 0;
+        while (walked < distance) {
+            float probe = Math.min(WALK_PROBE, distance - walked);
+            float newX = x[i] + dx * probe;
+            float newY = y[i] + dy * probe;
+            if (!map.isWalkable(map.worldToTileX(newX), map.worldToTileY(newY))) {
+                moveTimer[i] = hitWall(i);
+                return walked / MOVE_SPEED;
+            }
+            x[i] = newX;
+            y[i] = newY;
+            moved[i] = true;
+            walked += probe;
+        }
+        return seconds;
+    }
+
+    /**
+     * A slice of a tick list, split in halves until it is one partition
+     */
+    private class TickTask extends RecursiveAction {
+        private final int[] indices;
+        private final int from, to;
+
+        TickTask(int[] indices, int from, int to) {
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARTITION_SIZE) {
+                tick(indices, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TickTask(indices, from, middle), new TickTask(indices, middle, to));
+        }
+    }
+
+    /**
+     * Draw every NPC inside the world rectangle (the camera view) as a colored circle
+     */
+    public void render(ShapeRenderer shapeRenderer, float minX, float minY, float maxX, float maxY) {
+        scratchHits.clear();
+        grid.queryRect(minX - RADIUS, minY - RADIUS, maxX + RADIUS, maxY + RADIUS, scratchHits);
+        for (int k = 0; k < scratchHits.size; k++) {
+            render(scratchHits.items[k], shapeRenderer);
+        }
+    }
+
+    /**
+     * Closest NPC with a name (one the detective can talk to) within radius of a point, or -1
+     */
+    public int nearestInteractable(float pointX, float pointY, float radius) {
+        return grid.nearest(pointX, pointY, radius, interactable);
+    }
+
+    void render(int i, ShapeRenderer shapeRenderer) {
+        Color.rgba8888ToColor(scratchColor, color[i]);
+        shapeRenderer.setColor(scratchColor);
+        shapeRenderer.circle(x[i], y[i], RADIUS);
+
+        // Add a small white dot in center to show it's an NPC
+        shapeRenderer.setColor(Color.WHITE);
+        shapeRenderer.circle(x[i], y[i], 2f);
+    }
+
+    /**
+     * Apply pending grid moves of the listed NPCs (after fastForward)
+     */
+    void flushMoves(IntArray indices) {
+        for (int k = 0; k < indices.size; k++) {
+            int i = indices.items[k];
+            if (moved[i]) {
+                moved[i] = false;
+                grid.move(i, x[i], y[i]);
+            }
+        }
+    }
+
+    void addPendingDelta(int i, float deltaTime) { pendingDelta[i] += deltaTime; }
+
+    float takePendingDelta(int i) {
+        float pending = pendingDelta[i];
+        pendingDelta[i] = 0;
+        return pending;
+    }
+
+    // Per-NPC accessors (for NPC views)
+    float getX(int i) { return x[i]; }
+    float getY(int i) { return y[i]; }
+    String getName(int i) { return name[i]; }
+    void setPosition(int i, float newX, float newY) { x[i] = newX; y[i] = newY; grid.move(i, newX, newY); }
+
+    public int size() { return count; }
+    public long getSeed() { return seed; }
+
+    /**
+     * Tick big crowds on all cores (default) or on the calling thread only
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Hash of every NPC's position, timer and state - equal for runs that behaved identically
+     */
+    public long checksum() {
+        long hash = 17;
+        for (int i = 0; i < count; i++) {
+            hash = hash * 31 + Float.floatToRawIntBits(x[i]);
+            hash = hash * 31 + Float.floatToRawIntBits(y[i]);
+            hash = hash * 31 + Float.floatToRawIntBits(moveTimer[i]);
+            hash = hash * 31 + direction[i] * 2 + (moving[i] ? 1 : 0);
+        }
+        return hash;
+    }
+    public SimpleMap getMap() { return map; }
+    public Navigation getNavigation() { return navigation; }
+    public SpatialGrid getGrid() { return grid; }
+
+    // Statistics getters
+    public int getLastUpdated() { return lastUpdated; }
+    public long getLastUpdateMicros() { return lastUpdateNanos / 1000; }
+
+    /**
+     * Get simple debug info about the NPC store
+     */
+    public String getDebugInfo() {
+        return String.format("npcs: %d stored (capacity %d), %d updated last frame in %d us",
+            count, x.length, lastUpdated, getLastUpdateMicros());
+    }
+}
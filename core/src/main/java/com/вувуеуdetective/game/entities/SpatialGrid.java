@@ -0,0 +1,217 @@
+package com.вувуеуdetective.game.entities;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.вувуеуdetective.game.world.SimpleMap;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over the world with one cell per tile, for "who is near here"
+ * questions about NPCs. Cells are hashed into a bucket table sized by the
+ * number of NPCs (not by the map), each bucket an intrusive doubly linked
+ * list threaded through int arrays - so moving an NPC to another cell is an
+ * O(1) unlink and link, and a query only visits the cells it covers.
+ *
+ * Entries are NpcStore indices; all distances are compared squared.
+ * Not thread-safe; used from the game thread.
+ */
+public class SpatialGrid {
+
+    public static final int CELL_SIZE = SimpleMap.TILE_SIZE;
+    private static final int NONE = -1;
+
+    // Per bucket: first entry of its list
+    private int[] head;
+    private int mask;
+
+    // Per entry (NpcStore index)
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] cellX = new int[0];
+    private int[] cellY = new int[0];
+    private float[] posX = new float[0];
+    private float[] posY = new float[0];
+    private int count = 0;
+
+    // Statistics
+    private long moves = 0;
+    private long queries = 0;
+    private long visitedCells = 0;
+
+    public SpatialGrid() {
+        resizeBuckets(64);
+    }
+
+    private void resizeBuckets(int buckets) {
+        head = new int[buckets];
+        Arrays.fill(head, NONE);
+        mask = buckets - 1;
+        // Re-link everyone into the new table
+        for (int i = 0; i < count; i++) {
+            link(i);
+        }
+    }
+
+    private int bucket(int cx, int cy) {
+        return (cx * 73856093 ^ cy * 19349663) & mask;
+    }
+
+    static int cellOf(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * Add entry i (the next NpcStore index) at a position
+     */
+    public void add(int i, float x, float y) {
+        if (i != count) throw new IllegalArgumentException("Entries must be added in index order, expected " + count);
+        if (count == next.length) {
+            int capacity = Math.max(64, next.length * 2);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            cellX = Arrays.copyOf(cellX, capacity);
+            cellY = Arrays.copyOf(cellY, capacity);
+            posX = Arrays.copyOf(posX, capacity);
+            posY = Arrays.copyOf(posY, capacity);
+        }
+        count++;
+        posX[i] = x;
+        posY[i] = y;
+        cellX[i] = cellOf(x);
+        cellY[i] = cellOf(y);
+        if (count > head.length) {
+            resizeBuckets(head.length * 2); // Links everyone, including i
+        } else {
+            link(i);
+        }
+    }
+
+    /**
+     * Entry i moved - relinked only if it entered another cell
+     */
+    public void move(int i, float x, float y) {
+        posX[i] = x;
+        posY[i] = y;
+        int cx = cellOf(x);
+        int cy = cellOf(y);
+        if (cx == cellX[i] && cy == cellY[i]) return;
+        unlink(i);
+        cellX[i] = cx;
+        cellY[i] = cy;
+        link(i);
+        moves++;
+    }
+
+    private void link(int i) {
+        int b = bucket(cellX[i], cellY[i]);
+        int first = head[b];
+        next[i] = first;
+        prev[i] = NONE;
+        if (first != NONE) prev[first] = i;
+        head[b] = i;
+    }
+
+    private void unlink(int i) {
+        if (prev[i] != NONE) {
+            next[prev[i]] = next[i];
+        } else {
+            head[bucket(cellX[i], cellY[i])] = next[i];
+        }
+        if (next[i] != NONE) prev[next[i]] = prev[i];
+    }
+
+    /**
+     * All entries inside the world rectangle, added to out (which is not cleared)
+     */
+    public void queryRect(float minX, float minY, float maxX, float maxY, IntArray out) {
+        queries++;
+        int minCX = cellOf(minX), minCY = cellOf(minY), maxCX = cellOf(maxX), maxCY = cellOf(maxY);
+        for (int cy = minCY; cy <= maxCY; cy++) {
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                visitedCells++;
+                for (int i = head[bucket(cx, cy)]; i != NONE; i = next[i]) {
+                    // Other cells share the bucket - report entries from their own cell only
+                    if (cellX[i] != cx || cellY[i] != cy) continue;
+                    float x = posX[i], y = posY[i];
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) out.add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Entry closest to a point within radius that passes the filter (null = any), or -1
+     */
+    public int nearest(float x, float y, float radius, IntPredicate filter) {
+        queries++;
+        float bestDistance2 = radius * radius;
+        int best = NONE;
+        int minCX = cellOf(x - radius), minCY = cellOf(y - radius), maxCX = cellOf(x + radius), maxCY = cellOf(y + radius);
+        for (int cy = minCY; cy <= maxCY; cy++) {
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                visitedCells++;
+                for (int i = head[bucket(cx, cy)]; i != NONE; i = next[i]) {
+                    if (cellX[i] != cx || cellY[i] != cy) continue;
+                    float dx = posX[i] - x, dy = posY[i] - y;
+                    float distance2 = dx * dx + dy * dy;
+                    if (distance2 <= bestDistance2 && (filter == null || filter.test(i))) {
+                        bestDistance2 = distance2;
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Entries within radius of a point, added to out (which is not cleared)
+     */
+    public void queryRadius(float x, float y, float radius, IntArray out) {
+        queries++;
+        float radius2 = radius * radius;
+        int minCX = cellOf(x - radius), minCY = cellOf(y - radius), maxCX = cellOf(x + radius), maxCY = cellOf(y + radius);
+        for (int cy = minCY; cy <= maxCY; cy++) {
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                visitedCells++;
+                for (int i = head[bucket(cx, cy)]; i != NONE; i = next[i]) {
+                    if (cellX[i] != cx || cellY[i] != cy) continue;
+                    float dx = posX[i] - x, dy = posY[i] - y;
+                    if (dx * dx + dy * dy <= radius2) out.add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Other entries within radius of entry i, added to out (which is not cleared)
+     */
+    public void neighbours(int i, float radius, IntArray out) {
+        int start = out.size;
+        queryRadius(posX[i], posY[i], radius, out);
+        // Drop i itself
+        for (int k = start; k < out.size; k++) {
+            if (out.items[k] == i) {
+                out.items[k] = out.items[out.size - 1];
+                out.size--;
+                break;
+            }
+        }
+    }
+
+    public int size() { return count; }
+
+    // Statistics getters
+    public long getMoves() { return moves; }
+    public long getQueries() { return queries; }
+    public long getVisitedCells() { return visitedCells; }
+
+    /**
+     * Get simple debug info about the grid
+     */
+    public String getDebugInfo() {
+        return String.format("grid: %d entries in %d buckets, %d cell changes, %d queries (%.1f cells each)",
+            count, head.length, moves, queries, queries == 0 ? 0.0 : (double) visitedCells / queries);
+    }
+}
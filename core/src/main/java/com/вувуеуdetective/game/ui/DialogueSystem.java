@@ -3,8 +3,11 @@ package com.вувуеуdetective.game.ui;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.вувуеуdetective.game.entities.NPC;
 
+import java.util.concurrent.Future;
+
 /**
  * Simple dialogue system for showing NPC conversations
  * Displays dialogue boxes when talking to NPCs
@@ -14,7 +17,13 @@ public class DialogueSystem {
     // Dialogue box properties  
     private boolean isDialogueActive = false;
     private String currentSpeaker = "";
-    private String currentText = "";
+    private final StringBuilder currentText = new StringBuilder(); // Grows token by token while streaming
+    
+    // Waiting for the AI to answer (box shows animated dots until the first token)
+    private boolean isThinking = false;
+    private Future<?> pendingResponse = null;
+    private int currentReplyId = 0; // Tells late answers from old dialogues apart
+    private boolean showingStandIn = false; // Placeholder line shown while the AI is slow
     
     // Simple text display (we'll improve this later)
     private static final int BOX_WIDTH = 600;
@@ -27,19 +36,92 @@ public class DialogueSystem {
      */
     public void showDialogue(String npcName, String text) {
         isDialogueActive = true;
+        isThinking = false;
+        showingStandIn = false;
+        pendingResponse = null;
+        currentReplyId++;
         currentSpeaker = npcName;
-        currentText = text;
+        currentText.setLength(0);
+        currentText.append(text);
         
         System.out.println("[" + npcName + "]: " + text);
     }
     
+    /**
+     * Open the dialogue box in "thinking" state while the AI generates a reply.
+     * Returns the reply id that appendText/showResponse must be called with.
+     */
+    public int showThinking(String npcName) {
+        isDialogueActive = true;
+        isThinking = true;
+        showingStandIn = false;
+        pendingResponse = null;
+        currentSpeaker = npcName;
+        currentText.setLength(0);
+        
+        System.out.println("[" + npcName + "]: ...");
+        return ++currentReplyId;
+    }
+    
+    /**
+     * Attach the AI request behind a reply - it is cancelled if the player closes the box first
+     */
+    public void setPendingRequest(int replyId, Future<?> request) {
+        if (replyId != currentReplyId) {
+            request.cancel(true); // Dialogue already gone
+            return;
+        }
+        pendingResponse = request;
+    }
+    
+    /**
+     * Show a placeholder line because the AI missed its deadline.
+     * The real reply replaces it as soon as its first token arrives.
+     */
+    public void showStandIn(int replyId, String text) {
+        if (!isDialogueActive || replyId != currentReplyId || !isThinking) return;
+        isThinking = false;
+        showingStandIn = true;
+        currentText.setLength(0);
+        currentText.append(text);
+    }
+    
+    /**
+     * Append a streamed chunk of text to the reply being shown
+     */
+    public void appendText(int replyId, String text) {
+        if (!isDialogueActive || replyId != currentReplyId) return;
+        isThinking = false; // First token arrived
+        if (showingStandIn) {
+            showingStandIn = false;
+            currentText.setLength(0);
+        }
+        currentText.append(text);
+    }
+    
+    /**
+     * Deliver the final answer for a reply started with showThinking.
+     * Ignored if the player already closed or moved on from that dialogue.
+     */
+    public void showResponse(int replyId, String npcName, String text) {
+        if (!isDialogueActive || replyId != currentReplyId) return;
+        showDialogue(npcName, text);
+    }
+    
     /**
      * Close the current dialogue
      */
     public void closeDialogue() {
+        if (pendingResponse != null) {
+            pendingResponse.cancel(true); // Stop the AI request (and its stream) nobody will read
+            pendingResponse = null;
+        }
+        currentReplyId++;
+        isThinking = false;
+        showingStandIn = false;
         isDialogueActive = false;
         currentSpeaker = "";
-        currentText = "";
+        currentText.setLength(0);
     }
     
     /**
@@ -49,6 +131,13 @@ public class DialogueSystem {
         return isDialogueActive;
     }
     
+    /**
+     * Check if we are still waiting for the AI to answer
+     */
+    public boolean isThinking() {
+        return isThinking;
+    }
+    
     /**
      * Render the dialogue box (simple colored rectangle for now)
      */
@@ -70,6 +159,15 @@ public class DialogueSystem {
         // Right border
         shapeRenderer.rect(BOX_X + BOX_WIDTH - 2, BOX_Y, 2, BOX_HEIGHT);
         
+        // Thinking indicator - three dots lighting up one after another
+        if (isThinking) {
+            int activeDot = (int) ((TimeUtils.millis() / 300) % 3);
+            for (int i = 0; i < 3; i++) {
+                shapeRenderer.setColor(i == activeDot ? Color.WHITE : Color.GRAY);
+                shapeRenderer.circle(BOX_X + BOX_WIDTH / 2f - 20 + i * 20, BOX_Y + BOX_HEIGHT / 2f, 5f);
+            }
+        }
+        
         // Note: For now we just draw a box
         // Later we'll add proper text rendering
     }
@@ -87,6 +185,7 @@ public class DialogueSystem {
      */
     public String getDebugInfo() {
         if (!isDialogueActive) return "No dialogue";
+        if (isThinking) return currentSpeaker + ": (thinking...)";
         return currentSpeaker + ": " + 
                (currentText.length() > 30 ? 
                 currentText.substring(0, 30) + "..." : 
@@ -0,0 +1,155 @@
+package com.вувуеуdetective.game.world;
+
+import java.util.Arrays;
+
+/**
+ * Walking distance from every tile around a destination to it (a BFS over
+ * walkable tiles, limited to RADIUS tiles each way). Anyone inside the area
+ * finds the way by stepping to the neighbour with the smaller distance, so any
+ * number of NPCs heading to the same place share one field instead of each
+ * running a search.
+ *
+ * The field remembers the chunks it was built from; refresh() rebuilds it
+ * only if one of those chunks changed since.
+ */
+public class FlowField {
+
+    public static final int RADIUS = 64; // Tiles covered on each side of the destination
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Step directions (the same encoding NpcStore uses)
+    public static final int NONE = -1;
+    public static final int RIGHT = 0;
+    public static final int UP = 1;
+    public static final int LEFT = 2;
+    public static final int DOWN = 3;
+
+    private final int goalX;
+    private final int goalY;
+    private final int minX;
+    private final int minY;
+    private final int width;
+    private final int height;
+    private final int[] distance;
+    private int[] queue;
+
+    // What the field was built from
+    private final MapChunk[] chunks;
+    private final int[] chunkVersions;
+    private int mapVersion = -1;
+    private int builds = 0;
+    private long lastBuildNanos = 0;
+
+    public FlowField(SimpleMap map, int goalX, int goalY) {
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.minX = Math.max(0, goalX - RADIUS);
+        this.minY = Math.max(0, goalY - RADIUS);
+        this.width = Math.min(map.getWidth() - 1, goalX + RADIUS) - minX + 1;
+        this.height = Math.min(map.getHeight() - 1, goalY + RADIUS) - minY + 1;
+        this.distance = new int[width * height];
+
+        int firstChunkX = minX / SimpleMap.CHUNK_SIZE, lastChunkX = (minX + width - 1) / SimpleMap.CHUNK_SIZE;
+        int firstChunkY = minY / SimpleMap.CHUNK_SIZE, lastChunkY = (minY + height - 1) / SimpleMap.CHUNK_SIZE;
+        this.chunks = new MapChunk[(lastChunkX - firstChunkX + 1) * (lastChunkY - firstChunkY + 1)];
+        this.chunkVersions = new int[chunks.length];
+    }
+
+    /**
+     * Rebuild if a tile under the field changed since the last build, or its
+     * chunks were paged out and in again (both move the map version); true if it did
+     */
+    public boolean refresh(SimpleMap map) {
+        if (mapVersion == map.getVersion()) return false;
+        int firstChunkX = minX / SimpleMap.CHUNK_SIZE, lastChunkX = (minX + width - 1) / SimpleMap.CHUNK_SIZE;
+        int firstChunkY = minY / SimpleMap.CHUNK_SIZE;
+        int chunksX = lastChunkX - firstChunkX + 1;
+        boolean changed = mapVersion == -1;
+        for (int k = 0; k < chunks.length && !changed; k++) {
+            MapChunk chunk = map.getChunk(firstChunkX + k % chunksX, firstChunkY + k / chunksX);
+            // A region paged out and in again is a new chunk object - rebuild to be safe
+            changed = chunk != chunks[k] || chunk.getVersion() != chunkVersions[k];
+        }
+        if (changed) {
+            build(map);
+        } else {
+            mapVersion = map.getVersion(); // Changes were elsewhere on the map
+        }
+        return changed;
+    }
+
+    private void build(SimpleMap map) {
+        long start = System.nanoTime();
+        Arrays.fill(distance, UNREACHABLE);
+        if (queue == null) queue = new int[distance.length];
+        int head = 0, tail = 0;
+        if (map.isWalkable(goalX, goalY)) {
+            int goal = index(goalX, goalY);
+            distance[goal] = 0;
+            queue[tail++] = goal;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            int x = node % width;
+            int y = node / width;
+            int next = distance[node] + 1;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + (direction == RIGHT ? 1 : direction == LEFT ? -1 : 0);
+                int ny = y + (direction == UP ? 1 : direction == DOWN ? -1 : 0);
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+                int neighbour = ny * width + nx;
+                if (distance[neighbour] != UNREACHABLE || !map.isWalkable(nx + minX, ny + minY)) continue;
+                distance[neighbour] = next;
+                queue[tail++] = neighbour;
+            }
+        }
+
+        int firstChunkX = minX / SimpleMap.CHUNK_SIZE, lastChunkX = (minX + width - 1) / SimpleMap.CHUNK_SIZE;
+        int firstChunkY = minY / SimpleMap.CHUNK_SIZE;
+        int chunksX = lastChunkX - firstChunkX + 1;
+        for (int k = 0; k < chunks.length; k++) {
+            chunks[k] = map.getChunk(firstChunkX + k % chunksX, firstChunkY + k / chunksX);
+            chunkVersions[k] = chunks[k].getVersion();
+        }
+        mapVersion = map.getVersion();
+        builds++;
+        lastBuildNanos = System.nanoTime() - start;
+    }
+
+    private int index(int tileX, int tileY) {
+        return (tileY - minY) * width + (tileX - minX);
+    }
+
+    /**
+     * True if the tile is inside the area the field covers
+     */
+    public boolean contains(int tileX, int tileY) {
+        return tileX >= minX && tileX < minX + width && tileY >= minY && tileY < minY + height;
+    }
+
+    /**
+     * Steps from the tile to the destination, UNREACHABLE outside the field or behind walls
+     */
+    public int distanceAt(int tileX, int tileY) {
+        return contains(tileX, tileY) ? distance[index(tileX, tileY)] : UNREACHABLE;
+    }
+
+    /**
+     * Direction of the next step towards the destination, NONE at the destination or if unreachable
+     */
+    public int directionAt(int tileX, int tileY) {
+        int here = distanceAt(tileX, tileY);
+        if (here == 0 || here == UNREACHABLE) return NONE;
+        // Distances of neighbours on a BFS field differ by one - the first smaller one is on a shortest path
+        if (distanceAt(tileX + 1, tileY) < here) return RIGHT;
+        if (distanceAt(tileX, tileY + 1) < here) return UP;
+        if (distanceAt(tileX - 1, tileY) < here) return LEFT;
+        if (distanceAt(tileX, tileY - 1) < here) return DOWN;
+        return NONE;
+    }
+
+    public int getGoalX() { return goalX; }
+    public int getGoalY() { return goalY; }
+    public int getBuilds() { return builds; }
+    public long getLastBuildNanos() { return lastBuildNanos; }
+}
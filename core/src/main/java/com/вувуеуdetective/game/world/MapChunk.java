@@ -0,0 +1,100 @@
+package com.вувуеуdetective.game.world;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A CHUNK_SIZE x CHUNK_SIZE square of tiles. Chunks are the unit the map is
+ * stored, rendered and culled in - whatever the map size, a frame only touches
+ * the few chunks around the camera.
+ *
+ * One byte per tile, row by row (y = 0 at the bottom), in a ByteBuffer that is
+ * either on the heap or a slice of a memory-mapped region file. Walkability is
+ * kept as a bitset next to it, so isWalkable is a shift and a mask.
+ */
+public class MapChunk {
+
+    public static final int CHUNK_SIZE = 32;           // Tiles per side, power of two
+    static final int SHIFT = 5;                        // log2(CHUNK_SIZE)
+    static final int MASK = CHUNK_SIZE - 1;
+    public static final int CHUNK_BYTES = CHUNK_SIZE * CHUNK_SIZE;
+
+    private final int chunkX;
+    private final int chunkY;
+    private final ByteBuffer tiles;                    // CHUNK_BYTES, absolute indexing from 0
+    private final long[] walkable = new long[CHUNK_BYTES / 64]; // Bit per tile
+
+    // Bumped on every tile change in this chunk, so its cached rendering knows when to rebuild
+    private int version = 0;
+
+    /**
+     * Chunk over existing tile bytes (e.g. a slice of a mapped file)
+     */
+    MapChunk(int chunkX, int chunkY, ByteBuffer tiles) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.tiles = tiles;
+        for (int i = 0; i < CHUNK_BYTES; i++) {
+            if (tiles.get(i) == SimpleMap.EMPTY) walkable[i >>> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * Heap chunk with every tile set to fill
+     */
+    MapChunk(int chunkX, int chunkY, int fill) {
+        this(chunkX, chunkY, filled(fill));
+    }
+
+    private static ByteBuffer filled(int fill) {
+        ByteBuffer tiles = ByteBuffer.allocate(CHUNK_BYTES);
+        for (int i = 0; i < CHUNK_BYTES; i++) {
+            tiles.put(i, (byte) fill);
+        }
+        return tiles;
+    }
+
+    /**
+     * Tile at local coordinates (0..CHUNK_SIZE-1)
+     */
+    int get(int localX, int localY) {
+        return tiles.get((localY << SHIFT) | localX) & 0xFF;
+    }
+
+    boolean isWalkable(int localX, int localY) {
+        int index = (localY << SHIFT) | localX;
+        return (walkable[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Change a tile at local coordinates - false if it already had that type
+     */
+    boolean set(int localX, int localY, int type) {
+        int index = (localY << SHIFT) | localX;
+        if ((tiles.get(index) & 0xFF) == type) return false;
+        tiles.put(index, (byte) type);
+        if (type == SimpleMap.EMPTY) {
+            walkable[index >>> 6] |= 1L << index;
+        } else {
+            walkable[index >>> 6] &= ~(1L << index);
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * Copy the tile bytes into a buffer at its position (for saving)
+     */
+    void copyTo(ByteBuffer target) {
+        target.put(tiles.duplicate().clear());
+    }
+
+    public int getChunkX() { return chunkX; }
+    public int getChunkY() { return chunkY; }
+
+    /**
+     * Changes with every tile change in this chunk
+     */
+    public int getVersion() {
+        return version;
+    }
+}
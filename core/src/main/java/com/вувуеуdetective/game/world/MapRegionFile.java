@@ -0,0 +1,192 @@
+package com.вувуеуdetective.game.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map on disk, split into regions of REGION_SIZE x REGION_SIZE chunks that
+ * are memory-mapped one at a time. Loading a region is one FileChannel.map -
+ * no parsing, and the OS only reads the pages that are touched. Tile changes
+ * write straight through to the file.
+ *
+ * Layout (little endian): a 32 byte header (magic, format, width and height in
+ * tiles, chunk size, region size), then every region in row order; a region
+ * is its chunks in row order, CHUNK_BYTES each. Edge regions are stored full
+ * size so every region starts at a fixed offset.
+ */
+public class MapRegionFile {
+
+    public static final int REGION_SIZE = 8; // Chunks per side - 256x256 tiles, 64 KB
+    private static final int MAGIC = 0x50414D56; // "VMAP"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int REGION_BYTES = REGION_SIZE * REGION_SIZE * MapChunk.CHUNK_BYTES;
+
+    private final FileChannel channel;
+    private final boolean writable;
+    private final int width;
+    private final int height;
+    private final int regionsX;
+    private final int regionsY;
+    private final Map<Integer, MappedByteBuffer> mapped = new HashMap<>(); // Resident regions
+
+    // Statistics
+    private int pageIns = 0;
+    private int pageOuts = 0;
+
+    private MapRegionFile(FileChannel channel, boolean writable, int width, int height) {
+        this.channel = channel;
+        this.writable = writable;
+        this.width = width;
+        this.height = height;
+        this.regionsX = regionsFor(width);
+        this.regionsY = regionsFor(height);
+    }
+
+    private static int regionsFor(int tiles) {
+        int chunks = (tiles + MapChunk.CHUNK_SIZE - 1) / MapChunk.CHUNK_SIZE;
+        return (chunks + REGION_SIZE - 1) / REGION_SIZE;
+    }
+
+    /**
+     * Open a map file - read-write if possible, so tile changes are saved
+     */
+    public static MapRegionFile open(Path file) throws IOException {
+        FileChannel channel;
+        boolean writable = true;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            writable = false;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT
+                    || header.getInt(16) != MapChunk.CHUNK_SIZE || header.getInt(20) != REGION_SIZE) {
+                throw new IOException("Not a map file (or an old format): " + file);
+            }
+            MapRegionFile regionFile = new MapRegionFile(channel, writable, header.getInt(8), header.getInt(12));
+            long expected = HEADER_BYTES + (long) regionFile.regionsX * regionFile.regionsY * REGION_BYTES;
+            if (channel.size() < expected) {
+                throw new IOException("Map file is truncated: " + file);
+            }
+            return regionFile;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Save a whole map in this format
+     */
+    public static void write(SimpleMap map, Path file) throws IOException {
+        int regionsX = regionsFor(map.getWidth());
+        int regionsY = regionsFor(map.getHeight());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT).putInt(map.getWidth()).putInt(map.getHeight())
+                .putInt(MapChunk.CHUNK_SIZE).putInt(REGION_SIZE).flip();
+            header.limit(HEADER_BYTES);
+            channel.write(header, 0);
+
+            ByteBuffer region = ByteBuffer.allocate(REGION_BYTES);
+            long offset = HEADER_BYTES;
+            for (int ry = 0; ry < regionsY; ry++) {
+                for (int rx = 0; rx < regionsX; rx++) {
+                    region.clear();
+                    for (int i = 0; i < REGION_SIZE * REGION_SIZE; i++) {
+                        MapChunk chunk = map.getChunk(rx * REGION_SIZE + i % REGION_SIZE, ry * REGION_SIZE + i / REGION_SIZE);
+                        if (chunk != null) {
+                            chunk.copyTo(region);
+                        } else {
+                            region.position(region.position() + MapChunk.CHUNK_BYTES); // Outside the map
+                        }
+                    }
+                    region.flip();
+                    while (region.hasRemaining()) {
+                        offset += channel.write(region, offset);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Map a region's chunks into memory. Entries for chunks outside the map are null.
+     */
+    MapChunk[] pageIn(int regionX, int regionY) throws IOException {
+        long offset = HEADER_BYTES + ((long) regionY * regionsX + regionX) * REGION_BYTES;
+        MappedByteBuffer region = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+            offset, REGION_BYTES);
+        if (writable) mapped.put(regionY * regionsX + regionX, region);
+        pageIns++;
+
+        MapChunk[] chunks = new MapChunk[REGION_SIZE * REGION_SIZE];
+        int chunksX = (width + MapChunk.CHUNK_SIZE - 1) / MapChunk.CHUNK_SIZE;
+        int chunksY = (height + MapChunk.CHUNK_SIZE - 1) / MapChunk.CHUNK_SIZE;
+        for (int i = 0; i < chunks.length; i++) {
+            int chunkX = regionX * REGION_SIZE + i % REGION_SIZE;
+            int chunkY = regionY * REGION_SIZE + i / REGION_SIZE;
+            if (chunkX >= chunksX || chunkY >= chunksY) continue;
+            ByteBuffer tiles = region.slice(i * MapChunk.CHUNK_BYTES, MapChunk.CHUNK_BYTES);
+            chunks[i] = writable ? new MapChunk(chunkX, chunkY, tiles) : new MapChunk(chunkX, chunkY, copyOf(tiles));
+        }
+        return chunks;
+    }
+
+    /**
+     * Heap copy of read-only tiles, so the map can still be changed in memory
+     */
+    private static ByteBuffer copyOf(ByteBuffer tiles) {
+        ByteBuffer copy = ByteBuffer.allocate(MapChunk.CHUNK_BYTES);
+        copy.put(tiles.duplicate().clear()).clear();
+        return copy;
+    }
+
+    /**
+     * Flush a region's tile changes before its chunks are dropped. The mapping
+     * itself goes away with the last reference to them.
+     */
+    void pageOut(int regionX, int regionY) {
+        MappedByteBuffer region = mapped.remove(regionY * regionsX + regionX);
+        if (region != null) region.force();
+        pageOuts++;
+    }
+
+    /**
+     * Flush all changes and close the file
+     */
+    public void close() {
+        try {
+            for (MappedByteBuffer region : mapped.values()) {
+                region.force();
+            }
+            mapped.clear();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close map file: " + e.getMessage());
+        }
+    }
+
+    // Size getters
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getRegionsX() { return regionsX; }
+    public int getRegionsY() { return regionsY; }
+
+    // Statistics getters
+    public int getPageIns() { return pageIns; }
+    public int getPageOuts() { return pageOuts; }
+    public boolean isWritable() { return writable; }
+}
@@ -0,0 +1,110 @@
+package com.вувуеуdetective.game.world;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Way finding on a SimpleMap: flow fields for destinations many walk to (the
+ * inn, the square, wherever a crowd gathers), kept in a bounded LRU cache,
+ * and A* for one-off trips from further away than a field reaches.
+ *
+ * Fields are rebuilt lazily when a tile under them changes; fields over
+ * untouched parts of the map stay as they are. An evicted field keeps working
+ * for whoever still holds it, it just isn't handed out again.
+ *
+ * Not thread-safe; used from the game thread.
+ */
+public class Navigation {
+
+    private static final int MAX_FIELDS = 32;
+
+    private final SimpleMap map;
+    private final Pathfinder pathfinder;
+    private final Map<Integer, FlowField> fields = new LinkedHashMap<>(64, 0.75f, true); // Access order = LRU
+
+    // Statistics
+    private long fieldRequests = 0;
+    private long fieldHits = 0;
+    private long rebuilds = 0;
+    private int evictions = 0;
+    private long lastBuildNanos = 0;
+
+    public Navigation(SimpleMap map) {
+        this.map = map;
+        this.pathfinder = new Pathfinder(map);
+    }
+
+    /**
+     * Up to date flow field leading to a tile (shared with everyone going there).
+     * The tile must be inside the map - the cache key is only unique there.
+     */
+    public FlowField fieldTo(int tileX, int tileY) {
+        if (!isInside(tileX, tileY)) {
+            throw new IllegalArgumentException("Goal " + tileX + "," + tileY + " is outside the "
+                + map.getWidth() + "x" + map.getHeight() + " map");
+        }
+        fieldRequests++;
+        Integer key = tileY * map.getWidth() + tileX;
+        FlowField field = fields.get(key);
+        if (field != null) {
+            fieldHits++;
+            refresh(field);
+            return field;
+        }
+        field = new FlowField(map, tileX, tileY);
+        refresh(field);
+        fields.put(key, field);
+
+        Iterator<FlowField> eldest = fields.values().iterator();
+        while (fields.size() > MAX_FIELDS) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+        return field;
+    }
+
+    /**
+     * Bring a field up to date with the map, if a tile under it changed
+     */
+    public void refresh(FlowField field) {
+        if (field.refresh(map)) {
+            rebuilds++;
+            lastBuildNanos = field.getLastBuildNanos();
+        }
+    }
+
+    /**
+     * Shortest path between two tiles, see Pathfinder.findPath
+     */
+    public boolean findPath(int startX, int startY, int goalX, int goalY, IntArray out) {
+        return pathfinder.findPath(startX, startY, goalX, goalY, out);
+    }
+
+    /**
+     * True if the tile is on the map (a valid goal for fieldTo)
+     */
+    public boolean isInside(int tileX, int tileY) {
+        return tileX >= 0 && tileX < map.getWidth() && tileY >= 0 && tileY < map.getHeight();
+    }
+
+    public SimpleMap getMap() { return map; }
+
+    // Statistics getters
+    public int getCachedFields() { return fields.size(); }
+    public long getRebuilds() { return rebuilds; }
+    public int getEvictions() { return evictions; }
+    public long getLastBuildMicros() { return lastBuildNanos / 1000; }
+
+    /**
+     * Get simple debug info about navigation
+     */
+    public String getDebugInfo() {
+        return String.format("navigation: %d flow fields cached, %d/%d requests hit, %d builds (last %d us), %d evicted; %d paths searched (%d failed, %d nodes expanded)",
+            fields.size(), fieldHits, fieldRequests, rebuilds, getLastBuildMicros(), evictions,
+            pathfinder.getSearches(), pathfinder.getFailures(), pathfinder.getExpanded());
+    }
+}
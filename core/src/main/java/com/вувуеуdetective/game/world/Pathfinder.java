@@ -0,0 +1,182 @@
+package com.вувуеуdetective.game.world;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/**
+ * A* over walkable tiles (4 directions, cost 1 per step, Manhattan heuristic).
+ * The search is limited to a window around start and goal, and every array it
+ * uses - scores, parents, the open set heap - is a primitive array allocated
+ * once and reused: a generation stamp marks which entries belong to the
+ * current search, so nothing is cleared or allocated per search.
+ *
+ * Not thread-safe; used from the game thread.
+ */
+public class Pathfinder {
+
+    public static final int MAX_WINDOW = 512; // Tiles per side a search may cover
+    private static final int MARGIN = 32;     // Room for detours around the start-goal box
+
+    private final SimpleMap map;
+
+    // Per window node, valid where stamp == generation
+    private int[] g = new int[0];
+    private int[] parent = new int[0];
+    private int[] stamp = new int[0];
+    private boolean[] closed = new boolean[0];
+    private int generation = 0;
+
+    // Open set: binary min-heap on f, stale entries skipped when popped
+    private int[] heapF = new int[256];
+    private int[] heapNode = new int[256];
+    private int heapSize = 0;
+
+    // Statistics
+    private long searches = 0;
+    private long failures = 0;
+    private long expanded = 0;
+
+    public Pathfinder(SimpleMap map) {
+        this.map = map;
+    }
+
+    /**
+     * Find a shortest walkable path. On success out holds the tiles after the
+     * start up to and including the goal, as y * mapWidth + x, and true is returned.
+     * Fails if either end isn't walkable, no path exists inside the window, or
+     * the ends are too far apart for one window.
+     */
+    public boolean findPath(int startX, int startY, int goalX, int goalY, IntArray out) {
+        searches++;
+        out.clear();
+        if (!map.isWalkable(startX, startY) || !map.isWalkable(goalX, goalY)) {
+            failures++;
+            return false;
+        }
+        int minX = Math.max(0, Math.min(startX, goalX) - MARGIN);
+        int minY = Math.max(0, Math.min(startY, goalY) - MARGIN);
+        int maxX = Math.min(map.getWidth() - 1, Math.max(startX, goalX) + MARGIN);
+        int maxY = Math.min(map.getHeight() - 1, Math.max(startY, goalY) + MARGIN);
+        int width = maxX - minX + 1;
+        int height = maxY - minY + 1;
+        if (width > MAX_WINDOW || height > MAX_WINDOW) {
+            failures++;
+            return false;
+        }
+        prepare(width * height);
+
+        int start = (startY - minY) * width + (startX - minX);
+        int goal = (goalY - minY) * width + (goalX - minX);
+        heapSize = 0;
+        g[start] = 0;
+        parent[start] = -1;
+        stamp[start] = generation;
+        closed[start] = false;
+        push(heuristic(startX, startY, goalX, goalY), start);
+
+        while (heapSize > 0) {
+            int node = pop();
+            if (closed[node]) continue; // Stale entry, already expanded cheaper
+            closed[node] = true;
+            expanded++;
+            if (node == goal) {
+                tracePath(node, width, minX, minY, out);
+                return true;
+            }
+            int x = node % width;
+            int y = node / width;
+            int nextG = g[node] + 1;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + (direction == 0 ? 1 : direction == 2 ? -1 : 0);
+                int ny = y + (direction == 1 ? 1 : direction == 3 ? -1 : 0);
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+                if (!map.isWalkable(nx + minX, ny + minY)) continue;
+                int neighbour = ny * width + nx;
+                if (stamp[neighbour] == generation && (closed[neighbour] || g[neighbour] <= nextG)) continue;
+                stamp[neighbour] = generation;
+                closed[neighbour] = false;
+                g[neighbour] = nextG;
+                parent[neighbour] = node;
+                push(nextG + heuristic(nx + minX, ny + minY, goalX, goalY), neighbour);
+            }
+        }
+        failures++;
+        return false;
+    }
+
+    private static int heuristic(int x, int y, int goalX, int goalY) {
+        return Math.abs(x - goalX) + Math.abs(y - goalY);
+    }
+
+    private void tracePath(int node, int width, int minX, int minY, IntArray out) {
+        for (int n = node; parent[n] != -1; n = parent[n]) {
+            out.add((n / width + minY) * map.getWidth() + (n % width + minX));
+        }
+        // Collected goal first - reverse in place
+        for (int a = 0, b = out.size - 1; a < b; a++, b--) {
+            int swap = out.items[a];
+            out.items[a] = out.items[b];
+            out.items[b] = swap;
+        }
+    }
+
+    /**
+     * Start a new search over nodes window nodes
+     */
+    private void prepare(int nodes) {
+        if (g.length < nodes) {
+            g = new int[nodes];
+            parent = new int[nodes];
+            stamp = new int[nodes];
+            closed = new boolean[nodes];
+            generation = 0;
+        }
+        generation++;
+        if (generation == 0) { // Wrapped around - old stamps could look current
+            Arrays.fill(stamp, -1);
+            generation = 1;
+        }
+    }
+
+    private void push(int f, int node) {
+        if (heapSize == heapF.length) {
+            heapF = Arrays.copyOf(heapF, heapSize * 2);
+            heapNode = Arrays.copyOf(heapNode, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heapF[up] <= f) break;
+            heapF[i] = heapF[up];
+            heapNode[i] = heapNode[up];
+            i = up;
+        }
+        heapF[i] = f;
+        heapNode[i] = node;
+    }
+
+    private int pop() {
+        int top = heapNode[0];
+        int f = heapF[--heapSize];
+        int node = heapNode[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapF[child + 1] < heapF[child]) child++;
+            if (heapF[child] >= f) break;
+            heapF[i] = heapF[child];
+            heapNode[i] = heapNode[child];
+            i = child;
+        }
+        heapF[i] = f;
+        heapNode[i] = node;
+        return top;
+    }
+
+    // Statistics getters
+    public long getSearches() { return searches; }
+    public long getFailures() { return failures; }
+    public long getExpanded() { return expanded; }
+}
@@ -3,16 +3,30 @@ package com.вувуеуdetective.game.world;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
 /**
  * Simple map system using colored rectangles as tiles
  * This is a placeholder before we add real graphics
+ *
+ * Tiles are stored in MapChunk squares, so the map can be any size: the
+ * renderer and the NPC update only look at the chunks around the camera.
+ * A map opened from a MapRegionFile keeps only the regions around the player
+ * in memory - pageAround() maps new ones in and drops far ones, and a region
+ * anything else touches (a far NPC, say) is mapped in on demand.
  */
 public class SimpleMap {
 
-    // Map dimensions
+    // Size of the hand-made village (the default map)
     public static final int MAP_WIDTH = 20;
     public static final int MAP_HEIGHT = 15;
     public static final int TILE_SIZE = 32; // pixels
+    public static final int CHUNK_SIZE = MapChunk.CHUNK_SIZE;
 
     // Tile types
     public static final int EMPTY = 0;      // Walkable floor
@@ -20,8 +34,8 @@ public class SimpleMap {
     public static final int WATER = 2;      // Water (decoration)
     public static final int TREE = 3;       // Tree (decoration)
 
-    // Simple medieval village map
-    private int[][] mapData = {
+    // Simple medieval village map (row y = 0 is the bottom of the map)
+    private static final int[][] VILLAGE = {
         {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
         {1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1},
         {1, 0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 0, 0, 1},
@@ -39,22 +53,297 @@ public class SimpleMap {
         {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1}
     };
 
+    private final int width;     // In tiles
+    private final int height;
+    private final int chunksX;
+    private final int chunksY;
+    private final MapChunk[] chunks; // Row by row, null = region not paged in
+
+    // Region paging (file-backed maps only)
+    private static final int PAGE_RADIUS = 1; // Regions around the player's kept mapped
+    private final MapRegionFile regionFile;   // null = whole map on the heap
+    private final Set<Integer> residentRegions = new HashSet<>();
+    private int playerRegion = -1;
+
+    // Bumped on every tile change and whenever chunks are paged in or out,
+    // so cached renderings and flow fields know when to look again
+    private int version = 0;
+
+    /**
+     * The hand-made village
+     */
+    public SimpleMap() {
+        this(MAP_WIDTH, MAP_HEIGHT);
+        stampVillage();
+        version = 0;
+    }
+
+    /**
+     * An empty map (all floor) of the given size in tiles
+     */
+    public SimpleMap(int width, int height) {
+        this(width, height, null);
+        for (int cy = 0; cy < chunksY; cy++) {
+            for (int cx = 0; cx < chunksX; cx++) {
+                chunks[cy * chunksX + cx] = new MapChunk(cx, cy, EMPTY);
+            }
+        }
+    }
+
+    private SimpleMap(int width, int height, MapRegionFile regionFile) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Map size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunks = new MapChunk[chunksX * chunksY];
+        this.regionFile = regionFile;
+    }
+
+    /**
+     * A map saved with MapRegionFile.write. Nothing is read up front - regions
+     * are mapped in as they are needed.
+     */
+    public static SimpleMap open(Path file) throws IOException {
+        MapRegionFile regionFile = MapRegionFile.open(file);
+        return new SimpleMap(regionFile.getWidth(), regionFile.getHeight(), regionFile);
+    }
+
+    /**
+     * A large village: the hand-made one in the bottom left corner (where the
+     * player and the villagers start), houses, groves and ponds everywhere else.
+     * The same seed always gives the same map.
+     */
+    public static SimpleMap generateVillage(int width, int height, long seed) {
+        SimpleMap map = new SimpleMap(Math.max(width, MAP_WIDTH), Math.max(height, MAP_HEIGHT));
+        Random random = new Random(seed);
+        int lots = map.width * map.height / 200; // One feature per ~200 tiles
+
+        for (int i = 0; i < lots; i++) {
+            int x = random.nextInt(map.width);
+            int y = random.nextInt(map.height);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    map.placeHouse(x, y, 3 + random.nextInt(4), 3 + random.nextInt(3), random);
+                    break;
+                case 2:
+                    map.placeBlob(x, y, 1 + random.nextInt(3), TREE, random);
+                    break;
+                default:
+                    map.placeBlob(x, y, 1 + random.nextInt(2), WATER, random);
+                    break;
+            }
+        }
+
+        // Town wall around everything, then the old village on top
+        for (int x = 0; x < map.width; x++) {
+            map.setTileType(x, 0, WALL);
+            map.setTileType(x, map.height - 1, WALL);
+        }
+        for (int y = 0; y < map.height; y++) {
+            map.setTileType(0, y, WALL);
+            map.setTileType(map.width - 1, y, WALL);
+        }
+        map.stampVillage();
+
+        // A road around the old village, and gates in its wall to reach it
+        for (int y = 1; y <= MAP_HEIGHT; y++) map.setTileType(MAP_WIDTH, y, EMPTY);
+        for (int x = 1; x <= MAP_WIDTH; x++) map.setTileType(x, MAP_HEIGHT, EMPTY);
+        if (map.width > MAP_WIDTH + 1) map.setTileType(MAP_WIDTH - 1, 7, EMPTY);
+        if (map.height > MAP_HEIGHT + 1) map.setTileType(10, MAP_HEIGHT - 1, EMPTY);
+        map.version = 0;
+        return map;
+    }
+
+    /**
+     * Hollow rectangle of walls with a door in the bottom side
+     */
+    private void placeHouse(int x, int y, int houseWidth, int houseHeight, Random random) {
+        if (x + houseWidth >= width - 1 || y + houseHeight >= height - 1) return;
+        for (int dx = 0; dx < houseWidth; dx++) {
+            setTileType(x + dx, y, WALL);
+            setTileType(x + dx, y + houseHeight - 1, WALL);
+        }
+        for (int dy = 0; dy < houseHeight; dy++) {
+            setTileType(x, y + dy, WALL);
+            setTileType(x + houseWidth - 1, y + dy, WALL);
+        }
+        setTileType(x + 1 + random.nextInt(houseWidth - 2), y, EMPTY);
+    }
+
+    /**
+     * Rough disc of trees or water
+     */
+    private void placeBlob(int centerX, int centerY, int radius, int type, Random random) {
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if (dx * dx + dy * dy <= radius * radius && random.nextInt(4) != 0) {
+                    setTileType(centerX + dx, centerY + dy, type);
+                }
+            }
+        }
+    }
+
+    private void stampVillage() {
+        for (int y = 0; y < MAP_HEIGHT; y++) {
+            for (int x = 0; x < MAP_WIDTH; x++) {
+                setTileType(x, y, VILLAGE[y][x]);
+            }
+        }
+    }
+
+    /**
+     * Chunk holding a tile inside the map, paged in if necessary
+     */
+    private MapChunk chunkOf(int x, int y) {
+        MapChunk chunk = chunks[(y >> MapChunk.SHIFT) * chunksX + (x >> MapChunk.SHIFT)];
+        if (chunk != null) return chunk;
+        return pageIn(x >> MapChunk.SHIFT, y >> MapChunk.SHIFT);
+    }
+
     /**
      * Get tile type at specific coordinates
      */
     public int getTileType(int x, int y) {
-        if (x < 0 || x >= MAP_WIDTH || y < 0 || y >= MAP_HEIGHT) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
             return WALL; // Outside bounds = wall
         }
-        return mapData[y][x];
+        return chunkOf(x, y).get(x & MapChunk.MASK, y & MapChunk.MASK);
     }
 
     /**
-     * Check if tile is walkable (player can move here)
+     * Change a tile (door opened, wall built...). Ignored outside the map.
+     * On a file-backed map the change is saved to the file; if the file is
+     * read-only, the changed region stays in memory for the rest of the session.
+     */
+    public void setTileType(int x, int y, int type) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return;
+        if (chunkOf(x, y).set(x & MapChunk.MASK, y & MapChunk.MASK, type)) {
+            version++;
+        }
+    }
+
+    /**
+     * Changes with every setTileType and every page-in or page-out - compare to
+     * see if the map (or which chunk objects hold it) changed
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Chunk at chunk coordinates, or null outside the map
+     */
+    public MapChunk getChunk(int chunkX, int chunkY) {
+        if (chunkX < 0 || chunkX >= chunksX || chunkY < 0 || chunkY >= chunksY) return null;
+        MapChunk chunk = chunks[chunkY * chunksX + chunkX];
+        return chunk != null ? chunk : pageIn(chunkX, chunkY);
+    }
+
+    /**
+     * Check if tile is walkable (player can move here) - only empty tiles are,
+     * looked up in the chunk's walkability bitset
      */
     public boolean isWalkable(int x, int y) {
-        int tileType = getTileType(x, y);
-        return tileType == EMPTY; // Only empty tiles are walkable
+        if (x < 0 || x >= width || y < 0 || y >= height) return false;
+        return chunkOf(x, y).isWalkable(x & MapChunk.MASK, y & MapChunk.MASK);
+    }
+
+    /**
+     * Map in the region holding a chunk and return that chunk. If the file
+     * can't be read the region becomes solid wall for this session.
+     * Synchronized because NPC ticks read the map from several threads; a chunk
+     * published into the array is safe to read without a lock (final fields).
+     */
+    private synchronized MapChunk pageIn(int chunkX, int chunkY) {
+        MapChunk loaded = chunks[chunkY * chunksX + chunkX];
+        if (loaded != null) return loaded; // Another thread got here first
+        int regionX = chunkX / MapRegionFile.REGION_SIZE;
+        int regionY = chunkY / MapRegionFile.REGION_SIZE;
+        MapChunk[] region;
+        try {
+            region = regionFile.pageIn(regionX, regionY);
+        } catch (IOException e) {
+            System.err.println("Could not load map region " + regionX + "," + regionY + ": " + e.getMessage());
+            region = new MapChunk[MapRegionFile.REGION_SIZE * MapRegionFile.REGION_SIZE];
+            for (int i = 0; i < region.length; i++) {
+                region[i] = new MapChunk(regionX * MapRegionFile.REGION_SIZE + i % MapRegionFile.REGION_SIZE,
+                    regionY * MapRegionFile.REGION_SIZE + i / MapRegionFile.REGION_SIZE, WALL);
+            }
+        }
+        for (MapChunk chunk : region) {
+            if (chunk != null && chunk.getChunkX() < chunksX && chunk.getChunkY() < chunksY) {
+                chunks[chunk.getChunkY() * chunksX + chunk.getChunkX()] = chunk;
+            }
+        }
+        residentRegions.add(regionY * regionFile.getRegionsX() + regionX);
+        version++; // New chunk objects - holders of the old ones must let go
+        return chunks[chunkY * chunksX + chunkX];
+    }
+
+    /**
+     * Keep the regions around a world position mapped and drop the others.
+     * Cheap to call every frame: it only acts when the position enters another region.
+     */
+    public synchronized void pageAround(float worldX, float worldY) {
+        if (regionFile == null) return;
+        int regionPixels = MapRegionFile.REGION_SIZE * CHUNK_SIZE * TILE_SIZE;
+        int centerX = Math.max(0, Math.min(regionFile.getRegionsX() - 1, (int) (worldX / regionPixels)));
+        int centerY = Math.max(0, Math.min(regionFile.getRegionsY() - 1, (int) (worldY / regionPixels)));
+        int region = centerY * regionFile.getRegionsX() + centerX;
+        if (region == playerRegion) return;
+        playerRegion = region;
+
+        // Drop regions well behind (one region of slack, so walking along a border doesn't thrash)
+        Iterator<Integer> resident = residentRegions.iterator();
+        while (resident.hasNext()) {
+            int key = resident.next();
+            int regionX = key % regionFile.getRegionsX();
+            int regionY = key / regionFile.getRegionsX();
+            if (Math.abs(regionX - centerX) <= PAGE_RADIUS + 1 && Math.abs(regionY - centerY) <= PAGE_RADIUS + 1) continue;
+            if (!regionFile.isWritable() && isModified(regionX, regionY)) continue; // Its changes exist nowhere else
+            regionFile.pageOut(regionX, regionY);
+            for (int cy = regionY * MapRegionFile.REGION_SIZE; cy < Math.min(chunksY, (regionY + 1) * MapRegionFile.REGION_SIZE); cy++) {
+                for (int cx = regionX * MapRegionFile.REGION_SIZE; cx < Math.min(chunksX, (regionX + 1) * MapRegionFile.REGION_SIZE); cx++) {
+                    chunks[cy * chunksX + cx] = null;
+                }
+            }
+            resident.remove();
+            version++;
+        }
+
+        // Map in the ones ahead before anything needs them
+        for (int regionY = centerY - PAGE_RADIUS; regionY <= centerY + PAGE_RADIUS; regionY++) {
+            for (int regionX = centerX - PAGE_RADIUS; regionX <= centerX + PAGE_RADIUS; regionX++) {
+                if (regionX < 0 || regionX >= regionFile.getRegionsX() || regionY < 0 || regionY >= regionFile.getRegionsY()) continue;
+                if (!residentRegions.contains(regionY * regionFile.getRegionsX() + regionX)) {
+                    pageIn(regionX * MapRegionFile.REGION_SIZE, regionY * MapRegionFile.REGION_SIZE);
+                }
+            }
+        }
+    }
+
+    /**
+     * True if a tile of a resident region was changed since it was paged in
+     */
+    private boolean isModified(int regionX, int regionY) {
+        for (int cy = regionY * MapRegionFile.REGION_SIZE; cy < Math.min(chunksY, (regionY + 1) * MapRegionFile.REGION_SIZE); cy++) {
+            for (int cx = regionX * MapRegionFile.REGION_SIZE; cx < Math.min(chunksX, (regionX + 1) * MapRegionFile.REGION_SIZE); cx++) {
+                MapChunk chunk = chunks[cy * chunksX + cx];
+                if (chunk != null && chunk.getVersion() != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Save changes and close the map file (no-op for maps on the heap)
+     */
+    public void close() {
+        if (regionFile != null) regionFile.close();
     }
 
     /**
@@ -68,6 +357,17 @@ public class SimpleMap {
         return (int) (worldY / TILE_SIZE);
     }
 
+    /**
+     * Convert world pixel coordinates to chunk coordinates (may be outside the map)
+     */
+    public int worldToChunkX(float worldX) {
+        return (int) Math.floor(worldX / (TILE_SIZE * CHUNK_SIZE));
+    }
+
+    public int worldToChunkY(float worldY) {
+        return (int) Math.floor(worldY / (TILE_SIZE * CHUNK_SIZE));
+    }
+
     /**
      * Convert tile coordinates to world pixel coordinates
      */
@@ -80,16 +380,22 @@ public class SimpleMap {
     }
 
     /**
-     * Render the map using simple colored rectangles
+     * Render one chunk using simple colored rectangles, in world coordinates.
+     * The game draws chunks once into StaticMapLayer, not every frame.
      */
-    public void render(ShapeRenderer shapeRenderer) {
-        for (int y = 0; y < MAP_HEIGHT; y++) {
-            for (int x = 0; x < MAP_WIDTH; x++) {
+    public void renderChunk(ShapeRenderer shapeRenderer, MapChunk chunk) {
+        int startX = chunk.getChunkX() * CHUNK_SIZE;
+        int startY = chunk.getChunkY() * CHUNK_SIZE;
+        int endX = Math.min(startX + CHUNK_SIZE, width);  // Edge chunks are partly outside the map
+        int endY = Math.min(startY + CHUNK_SIZE, height);
+
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
                 float worldX = tileToWorldX(x);
                 float worldY = tileToWorldY(y);
 
                 // Set color based on tile type
-                switch (getTileType(x, y)) {
+                switch (chunk.get(x - startX, y - startY)) {
                     case WALL:
                         shapeRenderer.setColor(Color.DARK_GRAY); // Dark gray walls
                         break;
@@ -111,17 +417,35 @@ public class SimpleMap {
         }
     }
 
+    // Size getters
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getChunksX() { return chunksX; }
+    public int getChunksY() { return chunksY; }
+
+    /**
+     * Get simple debug info about the map
+     */
+    public String getDebugInfo() {
+        if (regionFile == null) {
+            return String.format("map: %dx%d tiles, %d chunks in memory", width, height, chunks.length);
+        }
+        return String.format("map: %dx%d tiles from file, %d/%d regions mapped, %d paged in, %d paged out%s",
+            width, height, residentRegions.size(), regionFile.getRegionsX() * regionFile.getRegionsY(),
+            regionFile.getPageIns(), regionFile.getPageOuts(), regionFile.isWritable() ? "" : " (read-only)");
+    }
+
     /**
      * Get total map width in pixels
      */
     public int getMapWidthInPixels() {
-        return MAP_WIDTH * TILE_SIZE;
+        return width * TILE_SIZE;
     }
 
     /**
      * Get total map height in pixels
      */
     public int getMapHeightInPixels() {
-        return MAP_HEIGHT * TILE_SIZE;
+        return height * TILE_SIZE;
     }
 }
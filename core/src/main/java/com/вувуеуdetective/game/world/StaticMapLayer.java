@@ -0,0 +1,193 @@
+package com.вувуеуdetective.game.world;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ScreenUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The map's tiles pre-rendered into FrameBuffer textures, one per chunk. Only
+ * chunks overlapping the camera view are baked and drawn, so a frame costs a
+ * handful of textured quads however large the map is. Baked chunks are kept
+ * in a bounded LRU cache; an evicted chunk's frame buffer is reused for the
+ * next chunk that scrolls into view.
+ *
+ * Call update() outside any begin()/end() - baking switches render targets -
+ * and draw() inside a Batch using the same camera.
+ */
+public class StaticMapLayer implements Disposable {
+
+    // Tiles are flat colours, so a few texels per tile look exactly like 32 with
+    // Nearest filtering - and a chunk costs 256 KB instead of 4 MB of VRAM.
+    // Raise to TILE_SIZE once tiles get real art.
+    private static final int TEXELS_PER_TILE = 8;
+    private static final int TEXTURE_SIZE = SimpleMap.CHUNK_SIZE * TEXELS_PER_TILE;
+    private static final int CHUNK_WORLD_SIZE = SimpleMap.CHUNK_SIZE * SimpleMap.TILE_SIZE;
+
+    // Baked chunks kept around (about three screens' worth at 640x480); never fewer than are visible
+    private static final int MAX_CACHED_CHUNKS = 24;
+
+    /**
+     * A baked chunk
+     */
+    private static class CachedChunk {
+        MapChunk chunk;
+        final FrameBuffer frameBuffer;
+        int bakedVersion = -1; // Chunk version in the texture, -1 = nothing baked
+
+        CachedChunk(MapChunk chunk, FrameBuffer frameBuffer) {
+            this.chunk = chunk;
+            this.frameBuffer = frameBuffer;
+        }
+    }
+
+    private final SimpleMap map;
+    private final Map<Integer, CachedChunk> cache = new LinkedHashMap<>(32, 0.75f, true); // Access order = LRU
+    private final ArrayDeque<FrameBuffer> freeBuffers = new ArrayDeque<>();
+    private final List<CachedChunk> visible = new ArrayList<>();
+    private ShapeRenderer bakeRenderer = null; // Created on first update (needs a GL context)
+    private final Matrix4 bakeProjection = new Matrix4();
+
+    // Statistics
+    private int bakes = 0;
+    private int evictions = 0;
+    private long lastBakeNanos = 0;
+
+    public StaticMapLayer(SimpleMap map) {
+        this.map = map;
+    }
+
+    /**
+     * Find the chunks in the camera's view and (re-)bake those that are new or changed
+     */
+    public void update(OrthographicCamera camera) {
+        float halfWidth = camera.viewportWidth * camera.zoom / 2;
+        float halfHeight = camera.viewportHeight * camera.zoom / 2;
+        int minChunkX = Math.max(0, map.worldToChunkX(camera.position.x - halfWidth));
+        int minChunkY = Math.max(0, map.worldToChunkY(camera.position.y - halfHeight));
+        int maxChunkX = Math.min(map.getChunksX() - 1, map.worldToChunkX(camera.position.x + halfWidth));
+        int maxChunkY = Math.min(map.getChunksY() - 1, map.worldToChunkY(camera.position.y + halfHeight));
+
+        visible.clear();
+        for (int cy = minChunkY; cy <= maxChunkY; cy++) {
+            for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+                MapChunk chunk = map.getChunk(cx, cy);
+                CachedChunk cached = cache.get(cy * map.getChunksX() + cx); // Also marks it recently used
+                if (cached == null) {
+                    cached = new CachedChunk(chunk, obtainBuffer());
+                    cache.put(cy * map.getChunksX() + cx, cached);
+                } else if (cached.chunk != chunk) {
+                    cached.chunk = chunk; // Region was paged out and back in - versions start over
+                    cached.bakedVersion = -1;
+                }
+                if (cached.bakedVersion != cached.chunk.getVersion()) {
+                    bake(cached);
+                }
+                visible.add(cached);
+            }
+        }
+
+        // Visible chunks were touched last, so the eldest entries are off screen
+        int capacity = Math.max(MAX_CACHED_CHUNKS, visible.size());
+        Iterator<CachedChunk> eldest = cache.values().iterator();
+        while (cache.size() > capacity) {
+            freeBuffers.push(eldest.next().frameBuffer);
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private FrameBuffer obtainBuffer() {
+        if (!freeBuffers.isEmpty()) return freeBuffers.pop();
+        FrameBuffer frameBuffer = new FrameBuffer(Pixmap.Format.RGBA8888, TEXTURE_SIZE, TEXTURE_SIZE, false);
+        frameBuffer.getColorBufferTexture().setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+        return frameBuffer;
+    }
+
+    private void bake(CachedChunk cached) {
+        long start = System.nanoTime();
+        if (bakeRenderer == null) {
+            bakeRenderer = new ShapeRenderer();
+        }
+        // The chunk's world square onto the whole frame buffer, origin bottom left like the world
+        MapChunk chunk = cached.chunk;
+        bakeProjection.setToOrtho2D(chunk.getChunkX() * CHUNK_WORLD_SIZE, chunk.getChunkY() * CHUNK_WORLD_SIZE,
+            CHUNK_WORLD_SIZE, CHUNK_WORLD_SIZE);
+        bakeRenderer.setProjectionMatrix(bakeProjection);
+
+        cached.frameBuffer.begin();
+        ScreenUtils.clear(0, 0, 0, 0);
+        bakeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        map.renderChunk(bakeRenderer, chunk);
+        bakeRenderer.end();
+        cached.frameBuffer.end();
+
+        cached.bakedVersion = chunk.getVersion();
+        bakes++;
+        lastBakeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Draw the chunks found visible by the last update, in world coordinates
+     */
+    public void draw(Batch batch) {
+        for (CachedChunk cached : visible) {
+            MapChunk chunk = cached.chunk;
+            // Frame buffer textures are stored upside down - flip on the way out
+            batch.draw(cached.frameBuffer.getColorBufferTexture(),
+                chunk.getChunkX() * CHUNK_WORLD_SIZE, chunk.getChunkY() * CHUNK_WORLD_SIZE,
+                CHUNK_WORLD_SIZE, CHUNK_WORLD_SIZE, 0, 0, TEXTURE_SIZE, TEXTURE_SIZE, false, true);
+        }
+    }
+
+    /**
+     * Force a rebake (e.g. after the GL context was lost on resume)
+     */
+    public void invalidate() {
+        for (CachedChunk cached : cache.values()) {
+            cached.bakedVersion = -1;
+        }
+    }
+
+    // Statistics getters
+    public int getBakes() { return bakes; }
+    public int getEvictions() { return evictions; }
+    public int getVisibleChunks() { return visible.size(); }
+    public int getCachedChunks() { return cache.size(); }
+    public long getLastBakeMicros() { return lastBakeNanos / 1000; }
+
+    /**
+     * Get simple debug info about the cached layer
+     */
+    public String getDebugInfo() {
+        return String.format("map layer: %dx%d chunks, %d visible, %d cached, baked %d time(s) (last %d us), %d evicted",
+            map.getChunksX(), map.getChunksY(), getVisibleChunks(), getCachedChunks(), bakes, getLastBakeMicros(), evictions);
+    }
+
+    @Override
+    public void dispose() {
+        for (CachedChunk cached : cache.values()) {
+            cached.frameBuffer.dispose();
+        }
+        for (FrameBuffer frameBuffer : freeBuffers) {
+            frameBuffer.dispose();
+        }
+        if (bakeRenderer != null) bakeRenderer.dispose();
+        cache.clear();
+        freeBuffers.clear();
+        visible.clear();
+        bakeRenderer = null;
+    }
+}
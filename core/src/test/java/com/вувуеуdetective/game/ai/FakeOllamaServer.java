@@ -0,0 +1,316 @@
+package com.вувуеуdetective.game.ai;
+
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for a local Ollama server, for measuring OllamaClient without a model.
+ * Implements /api/generate (streaming NDJSON and single JSON), /api/embeddings
+ * (bag-of-words vectors, so similar texts really are close) and /api/tags.
+ * Timing and failures are configurable: delay before the first token, delay
+ * between tokens, answer length, error rate, stalls mid-answer and how many
+ * requests "the GPU" works on at once (the rest queue, like OLLAMA_NUM_PARALLEL).
+ */
+public class FakeOllamaServer {
+
+    private static final String[] WORDS = {
+        "Well", "detective,", "I", "was", "at", "the", "inn", "all", "evening.", "The",
+        "blacksmith", "left", "early,", "and", "nobody", "saw", "the", "merchant", "after", "dark."
+    };
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random(42); // Guarded by itself - same failures every run
+
+    // Behaviour, changeable while running
+    private volatile long firstTokenDelayMs = 200;
+    private volatile long tokenDelayMs = 20;
+    private volatile int tokensPerAnswer = 20;
+    private volatile int embeddingDimension = 768;
+    private volatile double errorRate = 0;
+    private volatile double stallRate = 0;
+    private volatile long stallMs = 5000;
+    private volatile List<String> models = new ArrayList<>(Arrays.asList(OllamaRouter.DEFAULT_MODEL));
+    private volatile Semaphore gpu = new Semaphore(1, true);
+
+    // Statistics
+    private final AtomicLong generateRequests = new AtomicLong();
+    private final AtomicLong tagRequests = new AtomicLong();
+    private final AtomicLong embeddingRequests = new AtomicLong();
+    private final AtomicLong failuresSent = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * Listen on localhost:port (0 = any free port, see getBaseUrl)
+     */
+    public FakeOllamaServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 64);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-ollama");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/generate", this::handleGenerate);
+        server.createContext("/api/embeddings", this::handleEmbeddings);
+        server.createContext("/api/tags", this::handleTags);
+    }
+
+    public FakeOllamaServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // Configuration
+    public FakeOllamaServer setFirstTokenDelayMs(long millis) { firstTokenDelayMs = millis; return this; }
+    public FakeOllamaServer setTokenDelayMs(long millis) { tokenDelayMs = millis; return this; }
+    public FakeOllamaServer setTokensPerAnswer(int tokens) { tokensPerAnswer = Math.max(1, tokens); return this; }
+    public FakeOllamaServer setEmbeddingDimension(int dimension) { embeddingDimension = Math.max(1, dimension); return this; }
+    public FakeOllamaServer setErrorRate(double rate) { errorRate = rate; return this; }
+    public FakeOllamaServer setParallelism(int requests) { gpu = new Semaphore(Math.max(1, requests), true); return this; }
+    public FakeOllamaServer setModels(String... names) { models = new ArrayList<>(Arrays.asList(names)); return this; }
+
+    /**
+     * With probability rate, an answer pauses for millis halfway through
+     */
+    public FakeOllamaServer setStalls(double rate, long millis) {
+        stallRate = rate;
+        stallMs = millis;
+        return this;
+    }
+
+    // Statistics getters
+    public long getGenerateRequests() { return generateRequests.get(); }
+    public long getTagRequests() { return tagRequests.get(); }
+    public long getEmbeddingRequests() { return embeddingRequests.get(); }
+    public long getFailuresSent() { return failuresSent.get(); }
+    public int getMaxRunning() { return maxRunning.get(); }
+
+    public void resetStatistics() {
+        generateRequests.set(0);
+        tagRequests.set(0);
+        embeddingRequests.set(0);
+        failuresSent.set(0);
+        maxRunning.set(running.get());
+    }
+
+    private void handleTags(HttpExchange exchange) throws IOException {
+        tagRequests.incrementAndGet();
+        StringBuilder body = new StringBuilder("{\"models\":[");
+        List<String> installed = models;
+        for (int i = 0; i < installed.size(); i++) {
+            if (i > 0) body.append(',');
+            body.append("{\"name\":").append(quote(installed.get(i))).append('}');
+        }
+        body.append("]}");
+        respond(exchange, 200, body.toString());
+    }
+
+    private void handleEmbeddings(HttpExchange exchange) throws IOException {
+        embeddingRequests.incrementAndGet();
+        JsonValue request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = new JsonReader().parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            respond(exchange, 400, "{\"error\":\"invalid request body\"}");
+            return;
+        }
+
+        String model = request.getString("model", "");
+        if (!models.contains(model)) {
+            respond(exchange, 404, "{\"error\":\"model '" + model + "' not found\"}");
+            return;
+        }
+        if (chance(errorRate)) {
+            failuresSent.incrementAndGet();
+            respond(exchange, 500, "{\"error\":\"simulated model failure\"}");
+            return;
+        }
+
+        // Each word adds to a bucket picked by its hash - texts sharing words get a high cosine
+        float[] vector = new float[embeddingDimension];
+        for (String word : request.getString("prompt", "").toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) vector[Math.floorMod(word.hashCode(), vector.length)] += 1;
+        }
+        StringBuilder body = new StringBuilder("{\"embedding\":[");
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) body.append(',');
+            body.append(vector[i]);
+        }
+        body.append("]}");
+        respond(exchange, 200, body.toString());
+    }
+
+    private void handleGenerate(HttpExchange exchange) throws IOException {
+        generateRequests.incrementAndGet();
+        JsonValue request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = new JsonReader().parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            respond(exchange, 400, "{\"error\":\"invalid request body\"}");
+            return;
+        }
+
+        String model = request.getString("model", "");
+        String prompt = request.getString("prompt", "");
+        boolean stream = request.getBoolean("stream", true); // Ollama streams unless told otherwise
+        if (!models.contains(model)) {
+            respond(exchange, 404, "{\"error\":\"model '" + model + "' not found\"}");
+            return;
+        }
+        if (prompt.isEmpty()) {
+            // Empty prompt only loads the model
+            respond(exchange, 200, "{\"model\":" + quote(model) + ",\"response\":\"\",\"done\":true}");
+            return;
+        }
+        if (chance(errorRate)) {
+            failuresSent.incrementAndGet();
+            respond(exchange, 500, "{\"error\":\"simulated model failure\"}");
+            return;
+        }
+
+        Semaphore slots = gpu;
+        try {
+            slots.acquire(); // Queue for the "GPU" like a real server does
+        } catch (InterruptedException e) {
+            exchange.close();
+            return;
+        }
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        try {
+            generate(exchange, model, prompt, stream);
+        } catch (IOException | InterruptedException e) {
+            // Client hung up (cancelled dialogue) - stop generating like Ollama does
+        } finally {
+            running.decrementAndGet();
+            slots.release();
+            exchange.close();
+        }
+    }
+
+    private void generate(HttpExchange exchange, String model, String prompt, boolean stream)
+            throws IOException, InterruptedException {
+        int tokens = tokensPerAnswer;
+        int stallAt = chance(stallRate) ? tokens / 2 : -1;
+        long start = System.nanoTime();
+
+        Thread.sleep(firstTokenDelayMs); // Prompt evaluation
+        if (!stream) {
+            Thread.sleep(tokenDelayMs * (tokens - 1) + (stallAt >= 0 ? stallMs : 0));
+            String text = answer(0, tokens);
+            respond(exchange, 200, "{\"model\":" + quote(model) + ",\"response\":" + quote(text)
+                + ",\"done\":true," + stats(prompt, tokens, start) + "}");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0); // Chunked
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < tokens; i++) {
+                if (i > 0) Thread.sleep(tokenDelayMs);
+                if (i == stallAt) Thread.sleep(stallMs);
+                writeLine(out, "{\"model\":" + quote(model) + ",\"response\":" + quote(answer(i, i + 1)) + ",\"done\":false}");
+            }
+            writeLine(out, "{\"model\":" + quote(model) + ",\"response\":\"\",\"done\":true," + stats(prompt, tokens, start) + "}");
+        }
+    }
+
+    /**
+     * Final-chunk fields the client reads: context and eval statistics
+     */
+    private String stats(String prompt, int tokens, long start) {
+        int promptTokens = Math.max(1, prompt.length() / 4);
+        StringBuilder context = new StringBuilder("[");
+        for (int i = 0; i < promptTokens + tokens; i++) {
+            if (i > 0) context.append(',');
+            context.append(i);
+        }
+        context.append(']');
+        return "\"context\":" + context + ",\"prompt_eval_count\":" + promptTokens + ",\"eval_count\":" + tokens
+            + ",\"eval_duration\":" + (System.nanoTime() - start);
+    }
+
+    private static String answer(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[i % WORDS.length]);
+        }
+        return text.toString();
+    }
+
+    private boolean chance(double rate) {
+        if (rate <= 0) return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush(); // One chunk per token, so the client sees it right away
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Run standalone, e.g. to point the game at it with OLLAMA_HOST=127.0.0.1:11435
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 11435;
+        FakeOllamaServer server = new FakeOllamaServer(port).start();
+        System.out.println("Fake Ollama listening on " + server.getBaseUrl());
+    }
+}
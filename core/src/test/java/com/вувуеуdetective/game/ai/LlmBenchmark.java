@@ -0,0 +1,194 @@
+package com.вувуеуdetective.game.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Offline latency benchmark for OllamaClient. Drives greeting and question
+ * workloads at several concurrency levels against FakeOllamaServer (or a real
+ * server with --url) and prints p50/p95/p99 time to first token, total latency
+ * and throughput, so scheduler, cache and streaming changes can be compared.
+ *
+ *   ./gradlew :core:llmBenchmark --args="--requests 200 --concurrency 1,4,16"
+ *
+ * Options: --requests N, --concurrency a,b,c, --first-token-ms, --token-ms,
+ * --tokens, --parallel (fake GPU slots), --error-rate, --stall-rate, --stall-ms,
+ * --servers N (fake servers in the pool), --url (real Ollama, ignores fake options).
+ */
+public class LlmBenchmark {
+
+    private static final String[] NPC_NAMES = {
+        "Blacksmith", "Innkeeper", "Merchant", "Miller", "Guard", "Priest", "Baker", "Farmer"
+    };
+
+    /**
+     * One kind of traffic: how a single request is started
+     */
+    private interface Workload {
+        CompletableFuture<String> start(OllamaClient client, int index, Consumer<String> onToken);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+
+        List<FakeOllamaServer> servers = new ArrayList<>();
+        OllamaRouter router = new OllamaRouter();
+        router.setSlotsPerEndpoint(options.parallel); // Client capacity follows what the servers can run
+        if (options.url != null) {
+            router.addEndpoint(options.url);
+        } else {
+            for (int i = 0; i < options.servers; i++) {
+                FakeOllamaServer server = new FakeOllamaServer(0)
+                    .setFirstTokenDelayMs(options.firstTokenMs)
+                    .setTokenDelayMs(options.tokenMs)
+                    .setTokensPerAnswer(options.tokens)
+                    .setParallelism(options.parallel)
+                    .setErrorRate(options.errorRate)
+                    .setStalls(options.stallRate, options.stallMs)
+                    .start();
+                servers.add(server);
+                router.addEndpoint(server.getBaseUrl());
+            }
+        }
+
+        System.out.println(String.format("LLM benchmark: %d requests per run, %s", options.requests,
+            options.url != null ? "server " + options.url
+                : String.format("%d fake server(s), first token %d ms, %d tokens x %d ms, %d parallel, %.0f%% errors, %.0f%% stalls",
+                    options.servers, options.firstTokenMs, options.tokens, options.tokenMs, options.parallel,
+                    options.errorRate * 100, options.stallRate * 100)));
+        System.out.println(String.format("%-18s %5s | %-28s | %-28s | %8s | %s",
+            "workload", "conc", "first token p50/p95/p99 ms", "total p50/p95/p99 ms", "req/s", "notes"));
+
+        // Greetings repeat per NPC, so the cache and coalescing get a chance
+        Workload greetings = (client, i, onToken) ->
+            client.getNPCGreetingStreaming(NPC_NAMES[i % NPC_NAMES.length], "villager", onToken);
+        // Every question is different - pure model traffic
+        Workload questions = (client, i, onToken) ->
+            client.askStreaming("Benchmark question #" + i + ": where were you last night?", onToken);
+        Workload blocking = (client, i, onToken) ->
+            client.askAsync("Benchmark question #" + i + ": who did you see at the inn?");
+
+        for (int concurrency : options.concurrency) {
+            run("greeting-stream", greetings, concurrency, options, router, servers);
+            run("ask-stream", questions, concurrency, options, router, servers);
+            run("ask-blocking", blocking, concurrency, options, router, servers);
+        }
+
+        for (FakeOllamaServer server : servers) {
+            server.stop();
+        }
+        System.exit(0); // Don't wait for idle HTTP worker threads
+    }
+
+    private static void run(String name, Workload workload, int concurrency, Options options,
+                            OllamaRouter router, List<FakeOllamaServer> servers) throws InterruptedException {
+        // Fresh client per run: empty cache, scheduler and latency windows
+        OllamaClient client = new OllamaClient(new ResponseCache(1024, 10 * 60 * 1000, 1), router);
+        client.setHedging(options.servers > 1);
+        for (FakeOllamaServer server : servers) {
+            server.resetStatistics();
+        }
+
+        LatencyTracker firstToken = new LatencyTracker(options.requests);
+        LatencyTracker total = new LatencyTracker(options.requests);
+        Semaphore slots = new Semaphore(concurrency);
+        CountDownLatch finished = new CountDownLatch(options.requests);
+        AtomicLong noTokens = new AtomicLong();
+
+        long runStart = System.nanoTime();
+        for (int i = 0; i < options.requests; i++) {
+            slots.acquire();
+            long start = System.nanoTime();
+            AtomicLong firstTokenAt = new AtomicLong();
+            CompletableFuture<String> request = workload.start(client, i,
+                token -> firstTokenAt.compareAndSet(0, System.nanoTime()));
+            request.whenComplete((text, error) -> {
+                long end = System.nanoTime();
+                // Non-streaming requests: the first token is the whole answer
+                long tokenAt = firstTokenAt.get() != 0 ? firstTokenAt.get() : end;
+                if (firstTokenAt.get() == 0 && !name.endsWith("blocking")) noTokens.incrementAndGet();
+                firstToken.record(TimeUnit.NANOSECONDS.toMillis(tokenAt - start));
+                total.record(TimeUnit.NANOSECONDS.toMillis(end - start));
+                slots.release();
+                finished.countDown();
+            });
+        }
+        finished.await();
+        double seconds = (System.nanoTime() - runStart) / 1e9;
+
+        StringBuilder notes = new StringBuilder();
+        notes.append(String.format("cache %.0f%%, coalesced %d, upstream %d",
+            client.getCache().getHitRate() * 100, client.getSingleFlight().getCoalescedCalls(),
+            client.getSingleFlight().getUpstreamCalls()));
+        if (noTokens.get() > 0) notes.append(", ").append(noTokens.get()).append(" fallbacks");
+        if (client.getHedgesSent() > 0) {
+            notes.append(String.format(", hedges %d (%d won)", client.getHedgesSent(), client.getHedgeWins()));
+        }
+        long failures = 0;
+        int maxRunning = 0;
+        for (FakeOllamaServer server : servers) {
+            failures += server.getFailuresSent();
+            maxRunning = Math.max(maxRunning, server.getMaxRunning());
+        }
+        if (!servers.isEmpty()) notes.append(String.format(", %d server errors, max %d on a GPU", failures, maxRunning));
+
+        System.out.println(String.format("%-18s %5d | %-28s | %-28s | %8.1f | %s",
+            name, concurrency, percentiles(firstToken), percentiles(total), options.requests / seconds, notes));
+    }
+
+    private static String percentiles(LatencyTracker tracker) {
+        return tracker.percentile(0.50) + " / " + tracker.percentile(0.95) + " / " + tracker.percentile(0.99);
+    }
+
+    /**
+     * Command line options with defaults close to qwen2.5:0.5b on a laptop GPU
+     */
+    private static class Options {
+        int requests = 100;
+        int[] concurrency = {1, 4, 16};
+        long firstTokenMs = 150;
+        long tokenMs = 15;
+        int tokens = 25;
+        int parallel = 2;
+        double errorRate = 0;
+        double stallRate = 0;
+        long stallMs = 3000;
+        int servers = 1;
+        String url = null;
+
+        Options(String[] args) {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--requests": requests = Integer.parseInt(value); break;
+                    case "--concurrency": concurrency = parseList(value); break;
+                    case "--first-token-ms": firstTokenMs = Long.parseLong(value); break;
+                    case "--token-ms": tokenMs = Long.parseLong(value); break;
+                    case "--tokens": tokens = Integer.parseInt(value); break;
+                    case "--parallel": parallel = Integer.parseInt(value); break;
+                    case "--error-rate": errorRate = Double.parseDouble(value); break;
+                    case "--stall-rate": stallRate = Double.parseDouble(value); break;
+                    case "--stall-ms": stallMs = Long.parseLong(value); break;
+                    case "--servers": servers = Integer.parseInt(value); break;
+                    case "--url": url = value; break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }
+
+        private static int[] parseList(String value) {
+            String[] parts = value.split(",");
+            int[] numbers = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                numbers[i] = Integer.parseInt(parts[i].trim());
+            }
+            return numbers;
+        }
+    }
+}
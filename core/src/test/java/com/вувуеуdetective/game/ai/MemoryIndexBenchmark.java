@@ -0,0 +1,63 @@
+package com.вувуеуdetective.game.ai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * k-NN search time of MemoryIndex for NPC memories of growing size, with
+ * nomic-embed-text sized vectors. A recall should stay far below a 16 ms frame.
+ *
+ *   ./gradlew :core:jmh --args="MemoryIndexBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryIndexBenchmark {
+
+    private static final int DIMENSION = 768;
+
+    @Param({"1000", "5000", "20000"})
+    public int entries;
+
+    private MemoryIndex index;
+    private float[] query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        index = new MemoryIndex(DIMENSION);
+        for (int i = 0; i < entries; i++) {
+            index.add(randomVector(random), "memory #" + i);
+        }
+        query = randomVector(random);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public List<MemoryIndex.Hit> searchTop3() {
+        return index.search(query, 3, -1f);
+    }
+}
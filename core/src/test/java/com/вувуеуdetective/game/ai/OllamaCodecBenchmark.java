@@ -0,0 +1,111 @@
+package com.вувуеуdetective.game.ai;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaRequest;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OllamaCodec against the reflective libGDX Json path it replaced, for the
+ * three things the client does: decode a stream chunk (per token), decode
+ * the final chunk (with a long context) and encode a request.
+ *
+ *   ./gradlew :core:jmh                    (add --args="-prof gc" for allocation per op)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OllamaCodecBenchmark {
+
+    private byte[] tokenChunk;
+    private byte[] finalChunk;
+    private OllamaRequest request;
+
+    private OllamaCodec codec;
+    private Json json;
+
+    @Setup
+    public void setUp() {
+        // What Ollama sends for every token
+        tokenChunk = ("{\"model\":\"qwen2.5:0.5b\",\"created_at\":\"2025-01-01T12:00:00.000000Z\","
+            + "\"response\":\" blacksmith\",\"done\":false}").getBytes(StandardCharsets.UTF_8);
+
+        // Last chunk of a conversation turn: stats plus ~1000 context tokens
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) context.append(',');
+            context.append(151000 + i * 7 % 1000);
+        }
+        finalChunk = ("{\"model\":\"qwen2.5:0.5b\",\"created_at\":\"2025-01-01T12:00:01.000000Z\",\"response\":\"\","
+            + "\"done\":true,\"done_reason\":\"stop\",\"context\":[" + context + "],"
+            + "\"total_duration\":912345678,\"load_duration\":1234567,\"prompt_eval_count\":180,"
+            + "\"prompt_eval_duration\":45678901,\"eval_count\":42,\"eval_duration\":812345678}")
+            .getBytes(StandardCharsets.UTF_8);
+
+        request = new OllamaRequest();
+        request.model = "qwen2.5:0.5b";
+        request.prompt = "You are Blacksmith, a blacksmith in a medieval village. A detective asks you: "
+            + "\"Where were you last night?\" Answer in character, briefly (1-2 sentences).";
+        request.stream = true;
+        request.keep_alive = "30m";
+        request.context = new int[512];
+
+        codec = new OllamaCodec();
+        json = new Json();
+        json.setOutputType(JsonWriter.OutputType.json);
+        json.setUsePrototypes(false);
+        json.setIgnoreUnknownFields(true);
+    }
+
+    @Benchmark
+    public void decodeTokenCodec(Blackhole blackhole) {
+        codec.decode(tokenChunk, 0, tokenChunk.length);
+        blackhole.consume(codec.getResponse().toString()); // The client hands each token on as a String
+        blackhole.consume(codec.isDone());
+    }
+
+    @Benchmark
+    public void decodeTokenJson(Blackhole blackhole) {
+        OllamaResponse response = json.fromJson(OllamaResponse.class, new String(tokenChunk, StandardCharsets.UTF_8));
+        blackhole.consume(response.response);
+        blackhole.consume(response.done);
+    }
+
+    @Benchmark
+    public void decodeFinalCodec(Blackhole blackhole) {
+        codec.decode(finalChunk, 0, finalChunk.length);
+        blackhole.consume(codec.toResponse());
+    }
+
+    @Benchmark
+    public void decodeFinalJson(Blackhole blackhole) {
+        blackhole.consume(json.fromJson(OllamaResponse.class, new String(finalChunk, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String encodeCodec() {
+        return OllamaCodec.encode(request);
+    }
+
+    @Benchmark
+    public String encodeJson() {
+        return json.toJson(request, OllamaRequest.class);
+    }
+}
@@ -0,0 +1,185 @@
+package com.вувуеуdetective.game.ai;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.вувуеуdetective.game.ai.OllamaClient.GenerationOptions;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaRequest;
+import com.вувуеуdetective.game.ai.OllamaClient.OllamaResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Checks the hand-written OllamaCodec against the reflective libGDX Json it
+ * replaced: every fixture must decode to the same fields, whole and as part
+ * of an NDJSON stream read in odd-sized pieces (so lines span buffer
+ * compaction and growth), and encoded requests must read back unchanged.
+ * Exits with 1 on the first mismatch.
+ *
+ *   ./gradlew :core:codecCheck
+ */
+public class OllamaCodecCheck {
+
+    private static final String[] FIXTURES = {
+        // Plain stream chunk
+        "{\"model\":\"qwen2.5:0.5b\",\"created_at\":\"2025-01-01T12:00:00Z\",\"response\":\" blacksmith\",\"done\":false}",
+        // Simple escapes
+        "{\"response\":\"He said \\\"no\\\".\\nThen left\\tquickly \\\\ \\/ \\b\\f\\r\",\"done\":false}",
+        // \\u escapes, including a surrogate pair (magnifying glass)
+        "{\"response\":\"caf\\u00e9 \\u4e2d \\ud83d\\udd0d \\u0001\",\"done\":false}",
+        // Raw multi-byte UTF-8: 2, 3 and 4 bytes
+        "{\"response\":\"café Straße 中文 🔍 ок\",\"done\":false}",
+        // Empty and null text
+        "{\"response\":\"\",\"done\":false}",
+        "{\"response\":null,\"done\":false}",
+        "{}",
+        // Unknown fields with nested values and strings holding brackets and quotes
+        "{\"meta\":{\"a\":[1,2,{\"b\":\"}]\\\"\"}],\"c\":null},\"response\":\"ok\",\"x\":-1.5e3,\"done\":true}",
+        // Whitespace between tokens
+        "{ \"response\" : \"spaced\" , \"done\" : true , \"eval_count\" : 7 }",
+        // Error reported by Ollama
+        "{\"error\":\"model \\\"nomic\\\" not found, try pulling it first\"}",
+        "{\"error\":null,\"response\":\"fine\",\"done\":false}",
+        // Final chunk with stats and an empty context
+        "{\"response\":\"\",\"done\":true,\"context\":[],\"prompt_eval_count\":0,\"eval_count\":0,\"eval_duration\":0}",
+    };
+
+    public static void main(String[] args) throws IOException {
+        Json json = new Json(JsonWriter.OutputType.json);
+        json.setIgnoreUnknownFields(true);
+
+        List<String> fixtures = new ArrayList<>(Arrays.asList(FIXTURES));
+        fixtures.add(finalChunk(300));   // Fits the codec's first buffer
+        fixtures.add(finalChunk(5000));  // Longer than the buffer - forces it to grow
+        int checks = 0;
+
+        // Each object decoded on its own
+        OllamaCodec codec = new OllamaCodec();
+        for (String fixture : fixtures) {
+            byte[] bytes = fixture.getBytes(StandardCharsets.UTF_8);
+            codec.decode(bytes, 0, bytes.length);
+            compare("decode " + fixture, json.fromJson(OllamaResponse.class, fixture), codec);
+            checks++;
+        }
+
+        // All of them as one NDJSON stream, with blank lines, read in small random
+        // pieces, with and without a newline after the last object
+        Random random = new Random(7);
+        for (boolean trailingNewline : new boolean[] {true, false}) {
+            for (int run = 0; run < 20; run++) {
+                StringBuilder stream = new StringBuilder();
+                for (String fixture : fixtures) {
+                    stream.append(fixture).append(random.nextInt(4) == 0 ? "\n\n" : "\n");
+                }
+                if (!trailingNewline) stream.setLength(stream.length() - 1);
+
+                InputStream in = new ChoppyInputStream(stream.toString().getBytes(StandardCharsets.UTF_8), random);
+                OllamaCodec streamCodec = new OllamaCodec();
+                for (String fixture : fixtures) {
+                    if (!streamCodec.readObject(in)) fail("stream ended before " + fixture);
+                    compare("stream " + fixture, json.fromJson(OllamaResponse.class, fixture), streamCodec);
+                    checks++;
+                }
+                if (streamCodec.readObject(in)) fail("stream has more objects than were written");
+            }
+        }
+
+        // Encoded requests read back by Json
+        for (String fixture : fixtures) {
+            OllamaResponse decoded = json.fromJson(OllamaResponse.class, fixture);
+            OllamaRequest request = new OllamaRequest();
+            request.model = "qwen2.5:0.5b";
+            request.prompt = decoded.response == null ? "" : decoded.response + " \u0002 \"quoted\" back\\slash";
+            request.stream = true;
+            request.keep_alive = "30m";
+            request.format = checks % 2 == 0 ? "json" : null;
+            request.context = decoded.context;
+            request.options = new GenerationOptions();
+            request.options.num_predict = 96;
+            request.options.num_ctx = 2048;
+            request.options.stop = new String[] {"\n", "Detective:", "\"}"};
+            OllamaRequest read = json.fromJson(OllamaRequest.class, OllamaCodec.encode(request));
+            if (!Objects.equals(request.model, read.model) || !Objects.equals(request.prompt, read.prompt)
+                || request.stream != read.stream || !Objects.equals(request.keep_alive, read.keep_alive)
+                || !Objects.equals(request.format, read.format) || !Arrays.equals(request.context, read.context)
+                || read.options == null || request.options.num_predict != read.options.num_predict
+                || request.options.num_ctx != read.options.num_ctx || !Arrays.equals(request.options.stop, read.options.stop)) {
+                fail("encode: request read back differently\n  " + OllamaCodec.encode(request));
+            }
+            checks++;
+        }
+
+        System.out.println("OllamaCodec matches Json: " + checks + " checks over " + fixtures.size() + " fixtures");
+    }
+
+    /**
+     * Last chunk of a turn: stats and a long context
+     */
+    private static String finalChunk(int contextTokens) {
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < contextTokens; i++) {
+            if (i > 0) context.append(',');
+            context.append(151000 + i * 7 % 1000);
+        }
+        return "{\"model\":\"qwen2.5:0.5b\",\"response\":\"\",\"done\":true,\"done_reason\":\"stop\",\"context\":["
+            + context + "],\"total_duration\":912345678,\"prompt_eval_count\":180,\"eval_count\":42,"
+            + "\"eval_duration\":812345678}";
+    }
+
+    private static void compare(String what, OllamaResponse expected, OllamaCodec codec) {
+        OllamaResponse actual = codec.toResponse();
+        String expectedText = expected.response == null ? "" : expected.response; // The codec has no null text
+        if (!expectedText.equals(actual.response)) {
+            fail(what + "\n  response: expected [" + expectedText + "] got [" + actual.response + "]");
+        }
+        if (expected.done != actual.done) fail(what + "\n  done differs");
+        if (!Objects.equals(expected.error, actual.error)) {
+            fail(what + "\n  error: expected [" + expected.error + "] got [" + actual.error + "]");
+        }
+        if (!Arrays.equals(expected.context, actual.context)) fail(what + "\n  context differs");
+        if (expected.prompt_eval_count != actual.prompt_eval_count || expected.eval_count != actual.eval_count
+            || expected.eval_duration != actual.eval_duration) {
+            fail(what + "\n  stats differ");
+        }
+    }
+
+    private static void fail(String message) {
+        System.err.println("Mismatch: " + message);
+        System.exit(1);
+    }
+
+    /**
+     * Hands out its bytes 1-13 at a time, like a slow chunked HTTP body
+     */
+    private static class ChoppyInputStream extends InputStream {
+        private final byte[] bytes;
+        private final Random random;
+        private int position = 0;
+
+        ChoppyInputStream(byte[] bytes, Random random) {
+            this.bytes = bytes;
+            this.random = random;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] out, int offset, int length) {
+            if (position >= bytes.length) return -1;
+            int count = Math.min(Math.min(length, 1 + random.nextInt(13)), bytes.length - position);
+            System.arraycopy(bytes, position, out, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.вувуеуdetective.game.entities;
+
+import com.badlogic.gdx.graphics.Color;
+import com.вувуеуdetective.game.world.SimpleMap;
+
+import java.util.Random;
+
+/**
+ * Checks that parallel NPC ticks are bit-identical to serial ones: two stores
+ * with the same seed and crowd, one ticked on all cores and one on this
+ * thread, must end every frame with the same checksum. Exits with 1 if not.
+ *
+ *   ./gradlew :core:npcDeterminism --args="--villagers 50000 --frames 600"
+ */
+public class NpcTickDeterminism {
+
+    public static void main(String[] args) {
+        int villagers = 50000;
+        int frames = 600;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--villagers": villagers = Integer.parseInt(args[i + 1]); break;
+                case "--frames": frames = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default: System.err.println("Unknown option " + args[i]);
+            }
+        }
+
+        SimpleMap map = SimpleMap.generateVillage(1000, 1000, seed);
+        NpcStore parallel = new NpcStore(map, seed);
+        NpcStore serial = new NpcStore(map, seed);
+        serial.setParallel(false);
+        Random placement = new Random(seed);
+        while (parallel.size() < villagers) {
+            int tileX = placement.nextInt(map.getWidth());
+            int tileY = placement.nextInt(map.getHeight());
+            if (!map.isWalkable(tileX, tileY)) continue;
+            float x = (tileX + 0.5f) * SimpleMap.TILE_SIZE;
+            float y = (tileY + 0.5f) * SimpleMap.TILE_SIZE;
+            parallel.add(x, y, null, Color.BROWN);
+            serial.add(x, y, null, Color.BROWN);
+        }
+
+        long parallelNanos = 0;
+        long serialNanos = 0;
+        Random frameTimes = new Random(seed); // Uneven frame times, as in the game
+        for (int frame = 0; frame < frames; frame++) {
+            float delta = 1 / 60f + frameTimes.nextFloat() * 0.01f;
+            long start = System.nanoTime();
+            parallel.update(delta);
+            parallelNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            serial.update(delta);
+            serialNanos += System.nanoTime() - start;
+
+            if (parallel.checksum() != serial.checksum()) {
+                System.err.println("Parallel tick diverged from serial at frame " + frame);
+                System.exit(1);
+            }
+        }
+        System.out.printf("%d villagers, %d frames identical; parallel %.2f ms/frame, serial %.2f ms/frame (%d cores)%n",
+            villagers, frames, parallelNanos / 1e6 / frames, serialNanos / 1e6 / frames,
+            Runtime.getRuntime().availableProcessors());
+    }
+}